@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Compares [LogOutputStream] with the pipe and thread that [SharedUtil#toLog(java.util.function.Consumer)] used
+/// before it, by logging the output of a tool that writes a fixed number of lines in buffer-sized chunks.
+///
+/// Each operation is one tool's output, from creating the stream until every line has reached the logger, so the
+/// pipe's thread start and hand-off are measured along with its throughput.
+///
+/// Run with `./gradlew :gradleutils-shared:jmh`.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogOutputStreamBenchmark {
+    /// The size of the chunks the output is written in, like a buffered stream or a process's output being copied.
+    private static final int CHUNK_SIZE = 8192;
+
+    /// The number of lines the tool writes.
+    @Param({ "10", "10000" })
+    public int lines;
+
+    /// The length of each line, in bytes.
+    @Param({ "80", "4096" })
+    public int lineLength;
+
+    private byte[] output;
+    private byte[] utf16Output;
+
+    @Setup
+    public void setup() {
+        var output = ("x".repeat(this.lineLength - 1) + '\n').repeat(this.lines);
+        this.output = output.getBytes(StandardCharsets.UTF_8);
+        this.utf16Output = output.getBytes(StandardCharsets.UTF_16);
+    }
+
+    @Benchmark
+    public void logOutputStream(Blackhole blackhole) throws IOException {
+        this.logOutputStream(blackhole, this.output, StandardCharsets.UTF_8);
+    }
+
+    /// UTF-16 cannot be split on bytes, so this measures the decoding path.
+    @Benchmark
+    public void logOutputStreamUtf16(Blackhole blackhole) throws IOException {
+        this.logOutputStream(blackhole, this.utf16Output, StandardCharsets.UTF_16);
+    }
+
+    private void logOutputStream(Blackhole blackhole, byte[] output, Charset charset) throws IOException {
+        var count = new AtomicInteger();
+        try (var out = SharedUtil.toLog(line -> {
+            blackhole.consume(line);
+            count.incrementAndGet();
+        }, charset)) {
+            write(out, output);
+        }
+
+        if (count.get() != this.lines)
+            throw new IllegalStateException("Expected %d lines, got %d".formatted(this.lines, count.get()));
+    }
+
+    /// The pipe decodes with the platform charset, which is UTF-8 since Java 18.
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public void pipe(Blackhole blackhole) throws IOException {
+        var count = new AtomicInteger();
+        try (var out = SharedUtil.toLog(line -> {
+            blackhole.consume(line);
+            count.incrementAndGet();
+        })) {
+            write(out, this.output);
+        }
+
+        // the pipe's thread is still handing over the last lines
+        while (count.get() < this.lines)
+            Thread.onSpinWait();
+    }
+
+    private static void write(OutputStream out, byte[] output) throws IOException {
+        for (int i = 0; i < output.length; i += CHUNK_SIZE) {
+            out.write(output, i, Math.min(CHUNK_SIZE, output.length - i));
+        }
+    }
+}
@@ -10,12 +10,14 @@ import org.gradle.api.Project;
 import org.gradle.api.file.BuildLayout;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.flow.FlowScope;
 import org.gradle.api.initialization.Settings;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.ExtensionAware;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.jvm.toolchain.JavaToolchainService;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnknownNullability;
@@ -24,6 +26,7 @@ import javax.inject.Inject;
 import java.io.File;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /// The enhanced plugin contains several helper members to assist in making Gradle plugins as clean as possible without
 /// needing to duplicate code across projects.
@@ -36,6 +39,9 @@ public non-sealed abstract class EnhancedPlugin<T> implements Plugin<T>, Enhance
 
     private @UnknownNullability T target;
     private @Nullable ToolsExtensionImpl tools;
+    private @Nullable TaskProvider<ToolsPrefetch> toolsPrefetch;
+    private @Nullable Provider<ToolMetrics> toolMetrics;
+    private @Nullable Provider<ToolForkPermits> toolForkPermits;
     private final EnhancedProblems problemsInternal;
 
     /// The object factory provided by Gradle services.
@@ -66,6 +72,12 @@ public non-sealed abstract class EnhancedPlugin<T> implements Plugin<T>, Enhance
     /// Service Injection</a>
     protected abstract @Inject ProviderFactory getProviders();
 
+    /// The flow scope provided by Gradle services.
+    ///
+    /// @return The flow scope
+    /// @see <a href="https://docs.gradle.org/current/userguide/dataflow_actions.html">Dataflow Actions</a>
+    protected abstract @Inject FlowScope getFlowScope();
+
     /// This constructor must be called by all subclasses using a public constructor annotated with [Inject]. The name
     /// and display name passed in are used in a minimal instance of [EnhancedProblems], which is used to set up the
     /// plugin's [global][#globalCaches()] and [local][#localCaches()] caches. Additionally, the name is used to
@@ -98,6 +110,9 @@ public non-sealed abstract class EnhancedPlugin<T> implements Plugin<T>, Enhance
     /// @param target The target for this plugin
     @Override
     public final void apply(T target) {
+        // the caches are resolved from the target while the tool services, tasks, and flow actions are registered
+        this.target = target;
+
         if (this.toolsExtName != null && target instanceof ExtensionAware extensionAware) {
             this.tools = (ToolsExtensionImpl) extensionAware.getExtensions().create(ToolsExtension.class, this.toolsExtName, ToolsExtensionImpl.class);
 
@@ -111,7 +126,119 @@ public non-sealed abstract class EnhancedPlugin<T> implements Plugin<T>, Enhance
             this.tools = this.getObjects().newInstance(ToolsExtensionImpl.class);
         }
 
-        this.setup(this.target = target);
+        // the services are shared by all projects, so they are configured by the root project's tools extension
+        var gradle = this.getGradle(target);
+        var buildTools = this.getBuildTools(target);
+        this.tools.resolutions.set(this.registerToolResolutions(gradle, buildTools));
+        this.toolMetrics = this.registerToolMetrics(gradle);
+        this.toolForkPermits = this.registerToolForkPermits(gradle, buildTools);
+        if (target instanceof Project project && project != project.getRootProject())
+            this.tools.disallowBuildChanges();
+
+        if (target instanceof Project project)
+            this.registerToolsPrefetch(project, this.tools);
+
+        this.setup(target);
+    }
+
+    private Gradle getGradle(T target) {
+        try {
+            return (Gradle) InvokerHelper.getProperty(target, "gradle");
+        } catch (Exception e) {
+            throw this.problemsInternal.illegalPluginTarget(
+                new IllegalArgumentException(String.format("Failed to get Gradle for %s target: %s", this.displayName, target), e),
+                "types with access to Gradle via `#getGradle()`"
+            );
+        }
+    }
+
+    private Provider<ToolsExtensionImpl> getBuildTools(T target) {
+        var tools = this.tools;
+        var name = this.toolsExtName;
+        if (name == null || !(target instanceof Project project) || project == project.getRootProject())
+            return this.getProviders().provider(() -> tools);
+
+        // if the root project does not apply the plugin, the build-wide properties keep their defaults
+        var rootProject = project.getRootProject();
+        return this.getProviders().provider(() -> rootProject.getExtensions().findByName(name) instanceof ToolsExtensionImpl rootTools ? rootTools : tools);
+    }
+
+    private Provider<ToolResolutions> registerToolResolutions(Gradle gradle, Provider<ToolsExtensionImpl> tools) {
+        return gradle.getSharedServices().registerIfAbsent(this.name + "ToolResolutions", ToolResolutions.class, spec -> {
+            var parameters = spec.getParameters();
+            parameters.getCacheFile().set(
+                tools.flatMap(ToolsExtensionImpl::getPersistentResolution).flatMap(persistent -> persistent ? this.globalCaches().file("tools.resolution") : this.getProviders().provider(() -> null))
+            );
+            parameters.getRefresh().set(gradle.getStartParameter().isRefreshDependencies());
+        });
+    }
+
+    private Provider<ToolMetrics> registerToolMetrics(Gradle gradle) {
+        return gradle.getSharedServices().registerIfAbsent(this.name + "ToolMetrics", ToolMetrics.class, spec -> spec.getParameters().getReportFile().set(
+            this.getProviders().provider(this::rootProjectDirectory).flatMap(directory -> directory.file("build/reports/tools/" + this.name + ".json"))
+        ));
+    }
+
+    private Provider<ToolForkPermits> registerToolForkPermits(Gradle gradle, Provider<ToolsExtensionImpl> tools) {
+        return gradle.getSharedServices().registerIfAbsent(this.name + "ToolForkPermits", ToolForkPermits.class, spec -> spec.getParameters().getMaxMemory().set(
+            tools.flatMap(ToolsExtensionImpl::getMaxForkMemory)
+        ));
+    }
+
+    private void registerToolsPrefetch(Project project, ToolsExtensionImpl tools) {
+        var tasks = project.getTasks();
+        var toolsImport = tasks.register(ToolsBundle.Import.nameFor(this.name), ToolsBundle.Import.class, this.name, this.displayName);
+        toolsImport.configure(task -> {
+            task.getCachesDir().set(this.globalCaches());
+            task.getStoreDir().set(this.toolStore());
+            task.getBundle().convention(this.localCaches().file("tools-bundle.zip"));
+        });
+
+        this.toolsPrefetch = tasks.register(ToolsPrefetch.nameFor(this.name), ToolsPrefetch.class, this.name, this.displayName);
+        this.toolsPrefetch.configure(task -> {
+            task.getDownloads().set(tools.downloads);
+            task.getCachesDir().set(this.globalCaches());
+            task.getMaxParallelDownloads().set(tools.getMaxParallelDownloads());
+            task.getStoreDir().set(this.toolStore());
+            task.getRetries().set(tools.getDownloadRetries());
+            task.getRetryBackoff().set(tools.getDownloadRetryBackoff());
+            task.getConnections().set(tools.getDownloadConnections());
+            task.getOffline().set(tools.isOffline());
+            task.mustRunAfter(toolsImport);
+        });
+
+        tasks.register(ToolsBundle.Export.nameFor(this.name), ToolsBundle.Export.class, task -> {
+            task.dependsOn(this.toolsPrefetch);
+            task.getDownloads().set(tools.downloads);
+            task.getCachesDir().set(this.globalCaches());
+            task.getBundle().convention(this.localCaches().file("tools-bundle.zip"));
+        });
+
+        tasks.register(ToolsCleanup.Task.nameFor(this.name), ToolsCleanup.Task.class, task -> {
+            task.getCachesDir().set(this.globalCaches());
+            task.getStoreDir().set(this.toolStore());
+            task.getMaxSize().set(tools.getCacheMaxSize());
+            task.getMaxAge().set(tools.getCacheMaxAge());
+        });
+
+        // evict unused tools once the build is done with them
+        this.getFlowScope().always(ToolsCleanup.Action.class, spec -> {
+            var parameters = spec.getParameters();
+            parameters.getCachesDir().set(this.globalCaches());
+            parameters.getStoreDir().set(this.toolStore());
+            parameters.getMaxSize().set(tools.getCacheMaxSize());
+            parameters.getMaxAge().set(tools.getCacheMaxAge());
+            parameters.getInterval().set(tools.getCacheCleanupInterval());
+        });
+
+        // the lifecycle task may have already been registered by another plugin
+        if (!tasks.getNames().contains(ToolsPrefetch.LIFECYCLE_NAME)) {
+            tasks.register(ToolsPrefetch.LIFECYCLE_NAME, task -> {
+                task.setGroup("build setup");
+                task.setDescription("Downloads all tools used by the applied plugins ahead of time.");
+            });
+        }
+        tasks.named(ToolsPrefetch.LIFECYCLE_NAME, task -> task.dependsOn(this.toolsPrefetch));
     }
 
     /// Called when this plugin is applied to do setup work.
@@ -151,7 +278,65 @@ public non-sealed abstract class EnhancedPlugin<T> implements Plugin<T>, Enhance
             providers = this.getProviders();
         }
 
-        return ((ToolInternal) tool).get(this.globalCaches(), providers, this.tools);
+        return ((ToolInternal) tool).get(this.globalCaches(), this.toolStore(), providers, this.tools);
+    }
+
+    /// Gets a property of the given tool's definition.
+    ///
+    /// @param <V>      The type of the property
+    /// @param tool     The tool
+    /// @param property The property of the definition to get
+    /// @return A provider for the property, which has no value if the tool has no definition or it does not set it
+    final <V> Provider<V> getToolDefinitionProperty(Tool tool, Function<? super Tool.Definition, ? extends Provider<V>> property) {
+        var tools = this.tools;
+        if (tools == null)
+            throw new IllegalStateException("Plugin has not yet been applied");
+
+        return this.getProviders().provider(() -> {
+            var definition = tools.definitions.findByName(tool.getName());
+            return definition != null ? property.apply(definition).getOrNull() : null;
+        });
+    }
+
+    /// Gets the build service that collects the metrics of tool executions. Tasks should only use it if
+    /// [metrics are collected][#getCollectToolMetrics()].
+    ///
+    /// @return The build service for tool metrics
+    final Provider<ToolMetrics> getToolMetrics() {
+        var toolMetrics = this.toolMetrics;
+        if (toolMetrics == null)
+            throw new IllegalStateException("Plugin has not yet been applied");
+
+        return toolMetrics;
+    }
+
+    /// Gets whether the metrics of tool executions are [collected][ToolsExtension#getCollectMetrics()].
+    ///
+    /// @return A provider for if tool metrics are collected
+    final Provider<Boolean> getCollectToolMetrics() {
+        var tools = this.tools;
+        if (tools == null)
+            throw new IllegalStateException("Plugin has not yet been applied");
+
+        return tools.getCollectMetrics();
+    }
+
+    /// Gets the build service that limits how many tools are forked at once by their expected memory.
+    ///
+    /// @return The build service for fork permits
+    final Provider<ToolForkPermits> getToolForkPermits() {
+        var toolForkPermits = this.toolForkPermits;
+        if (toolForkPermits == null)
+            throw new IllegalStateException("Plugin has not yet been applied");
+
+        return toolForkPermits;
+    }
+
+    /// Gets the task that prefetches all tools used by this plugin.
+    ///
+    /// @return The prefetch task, or `null` if the target is not a project
+    final @Nullable TaskProvider<ToolsPrefetch> getToolsPrefetch() {
+        return this.toolsPrefetch;
     }
 
 
@@ -180,6 +365,33 @@ public non-sealed abstract class EnhancedPlugin<T> implements Plugin<T>, Enhance
         }
     }
 
+    private final Lazy<DirectoryProperty> toolStore = Lazy.simple(this::makeToolStore);
+
+    /// Gets the [content-addressed tool store][ToolStore], which is shared between all plugins.
+    ///
+    /// It is stored in `~/.gradle/caches/minecraftforge/.store`.
+    ///
+    /// @return The tool store directory
+    final DirectoryProperty toolStore() {
+        return this.toolStore.get();
+    }
+
+    private DirectoryProperty makeToolStore() {
+        try {
+            var gradle = ((Gradle) InvokerHelper.getProperty(this.target, "gradle"));
+            var gradleUserHomeDir = this.getObjects().directoryProperty().fileValue(gradle.getGradleUserHomeDir());
+
+            return this.getObjects().directoryProperty().convention(
+                gradleUserHomeDir.dir("caches/minecraftforge/" + ToolStore.DIRECTORY).map(this.problemsInternal.ensureFileLocation())
+            );
+        } catch (Exception e) {
+            throw this.problemsInternal.illegalPluginTarget(
+                new IllegalArgumentException(String.format("Failed to get %s tool store directory for target: %s", this.displayName, this.target), e),
+                "types with access to Gradle via `#getGradle()`"
+            );
+        }
+    }
+
     private final Lazy<DirectoryProperty> localCaches = Lazy.simple(this::makeLocalCaches);
 
     @Override
@@ -31,6 +31,7 @@ import java.io.Serial;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -223,6 +224,43 @@ public abstract class EnhancedProblems implements Serializable, Predicate<String
     }
     //endregion
 
+    //region Tools
+    final RuntimeException toolUnavailableOffline(Exception e, String tool, List<String> downloadUrls, String importTask) {
+        return this.throwing(e, "tool-unavailable-offline", "Tool not available offline", spec -> spec
+            .details("""
+                The %s plugin requires the tool %s, but it has not been downloaded yet and Gradle is running in offline mode.
+                Download URLs: %s""".formatted(this.displayName, tool, String.join(", ", downloadUrls)))
+            .severity(Severity.ERROR)
+            .stackLocation()
+            .solution("Run the build once without `--offline` so that the tool can be downloaded and cached.")
+            .solution("Import a tools bundle exported from a machine that has the tool cached using the `%s` task.".formatted(importTask))
+            .solution(HELP_MESSAGE));
+    }
+
+    final RuntimeException invalidToolsBundle(Exception e, File bundle) {
+        return this.throwing(e, "invalid-tools-bundle", "Invalid tools bundle", spec -> spec
+            .details("""
+                Failed to import the tools bundle for the %s plugin, as it is missing, corrupt, or its contents do not match its manifest.
+                Bundle: %s""".formatted(this.displayName, bundle.getAbsolutePath()))
+            .severity(Severity.ERROR)
+            .stackLocation()
+            .solution("Export the bundle again using a machine that has the tools cached.")
+            .solution(HELP_MESSAGE));
+    }
+
+    final RuntimeException toolHung(Exception e, String tool, String task, String reason, File threadDump) {
+        return this.throwing(e, "tool-hung", "Tool hung", spec -> spec
+            .details("""
+                The tool %s run by task %s was stopped, as %s.
+                Thread dump: %s""".formatted(tool, task, reason, threadDump.getAbsolutePath()))
+            .severity(Severity.ERROR)
+            .stackLocation()
+            .solution("Check the thread dump for where the tool is stuck, such as waiting on input or a deadlock.")
+            .solution("If the tool is only slow, increase its deadline or inactivity timeout.")
+            .solution(HELP_MESSAGE));
+    }
+    //endregion
+
     //region Utilities
 
     /// A utility method to ensure that a [FileSystemLocation] [Provider] has (its parent) directory created. If the
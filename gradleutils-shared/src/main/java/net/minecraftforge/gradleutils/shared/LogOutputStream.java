@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/// An output stream that splits everything written to it into lines, and hands each line to a consumer as soon as it
+/// is complete.
+///
+/// Lines are split in [#write(byte\[\], int, int)] itself, on the writing thread, so there is no pipe that can fill up
+/// and block the writer, and no thread to hand lines over to. Bytes are collected into a single buffer that is reused
+/// for every line, and only the finished line is decoded. Lines end with `\n` or `\r\n`. A line that is not yet
+/// finished is held back until it is, or until the stream is closed.
+///
+/// Splitting on bytes only works for charsets that encode `\n` as the single byte `0x0A`, and never use that byte as
+/// part of another character, such as UTF-8 and the other ASCII-compatible charsets. Other charsets, such as UTF-16,
+/// are decoded as they are written instead, and the decoded characters are split into lines.
+final class LogOutputStream extends OutputStream {
+    /// Once a line has grown the buffer past this size, the buffer is shrunk back after the line, so that a single
+    /// huge line does not keep its memory for the rest of the execution.
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private final Consumer<? super String> consumer;
+    private final Charset charset;
+    /// The decoder for charsets that lines cannot be split on bytes for, or `null` if they can.
+    private final @Nullable CharsetDecoder decoder;
+
+    private byte[] buffer = new byte[256];
+    private int count;
+    private final StringBuilder chars = new StringBuilder();
+    private boolean closed;
+
+    LogOutputStream(Consumer<? super String> consumer, Charset charset) {
+        this.consumer = consumer;
+        this.charset = charset;
+        this.decoder = isAsciiCompatible(charset) ? null : charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return charset.canEncode() && Arrays.equals("\r\n".getBytes(charset), new byte[] { '\r', '\n' });
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (this.decoder != null) {
+            this.append(new byte[] { (byte) b }, 0, 1);
+            this.decodeLines(false);
+        } else if (b == '\n') {
+            this.emit();
+        } else {
+            this.append(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if (this.decoder != null) {
+            this.append(b, off, len);
+            this.decodeLines(false);
+            return;
+        }
+
+        var end = off + len;
+        var start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] != '\n') continue;
+
+            if (this.count == 0) {
+                // the whole line is in the given bytes, no need to copy it
+                this.consumer.accept(this.decode(b, start, i));
+            } else {
+                this.append(b, start, i - start);
+                this.emit();
+            }
+            start = i + 1;
+        }
+
+        if (start < end)
+            this.append(b, start, end - start);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed) return;
+
+        this.closed = true;
+        if (this.decoder != null) {
+            this.decodeLines(true);
+            if (!this.chars.isEmpty())
+                this.emitChars();
+        } else if (this.count > 0) {
+            this.emit();
+        }
+    }
+
+    private void decodeLines(boolean endOfInput) {
+        assert this.decoder != null;
+
+        var in = ByteBuffer.wrap(this.buffer, 0, this.count);
+        var out = CharBuffer.allocate((int) (this.count * this.decoder.maxCharsPerByte()) + 16);
+        this.decoder.decode(in, out, endOfInput);
+        if (endOfInput) {
+            this.decoder.flush(out);
+            this.decoder.reset();
+        }
+
+        // keep the bytes of a character that has not been fully written yet
+        var remaining = in.remaining();
+        if (this.buffer.length > MAX_RETAINED && remaining <= 256) {
+            this.buffer = Arrays.copyOfRange(this.buffer, in.position(), in.position() + 256);
+        } else {
+            System.arraycopy(this.buffer, in.position(), this.buffer, 0, remaining);
+        }
+        this.count = remaining;
+
+        out.flip();
+        while (out.hasRemaining()) {
+            var c = out.get();
+            if (c == '\n') {
+                this.emitChars();
+            } else {
+                this.chars.append(c);
+            }
+        }
+    }
+
+    private void emitChars() {
+        var end = this.chars.length();
+        if (end > 0 && this.chars.charAt(end - 1) == '\r') end--;
+        var line = this.chars.substring(0, end);
+        this.chars.setLength(0);
+        if (this.chars.capacity() > MAX_RETAINED)
+            this.chars.trimToSize();
+
+        this.consumer.accept(line);
+    }
+
+    private void append(byte[] b, int off, int len) {
+        var required = this.count + len;
+        if (required > this.buffer.length)
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(required, this.buffer.length * 2));
+
+        System.arraycopy(b, off, this.buffer, this.count, len);
+        this.count = required;
+    }
+
+    private void emit() {
+        var line = this.decode(this.buffer, 0, this.count);
+        this.count = 0;
+        if (this.buffer.length > MAX_RETAINED)
+            this.buffer = new byte[256];
+
+        this.consumer.accept(line);
+    }
+
+    private String decode(byte[] b, int start, int end) {
+        if (end > start && b[end - 1] == '\r') end--;
+        return new String(b, start, end - start, this.charset);
+    }
+}
@@ -45,8 +45,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -642,11 +644,38 @@ public abstract class SharedUtil {
 
     //region Action Logging
 
+    /// Creates an output stream that logs each line written to it to the given logger.
+    ///
+    /// @param logger  The logger to log to
+    /// @param level   The log level to log at
+    /// @param charset The charset to decode lines with
+    /// @return The output stream
+    /// @see #toLog(Consumer, Charset)
+    public static OutputStream toLog(Logger logger, LogLevel level, Charset charset) {
+        return toLog(s -> logger.log(level, s), charset);
+    }
+
+    /// Creates an output stream that hands each line written to it to the given action.
+    ///
+    /// Lines are split as they are written and handed to the action on the writing thread, without a pipe or a
+    /// dedicated thread. A line that is not yet finished is handed over when the stream is closed, so the stream must
+    /// be closed once the writer is done with it. Lines are split on the bytes written for ASCII-compatible charsets,
+    /// and after decoding them for any other charset.
+    ///
+    /// @param logger  The action to hand lines to
+    /// @param charset The charset to decode lines with
+    /// @return The output stream
+    public static OutputStream toLog(Consumer<? super String> logger, Charset charset) {
+        return new LogOutputStream(logger, charset);
+    }
+
     /// Creates an output stream that logs to the given action.
     ///
     /// @param logger The logger to log to
     /// @param level  The log level to log at
     /// @return The output stream
+    /// @deprecated Use [#toLog(Logger, LogLevel, Charset)], which does not need a pipe and thread per stream
+    @Deprecated
     public static PipedOutputStream toLog(Logger logger, LogLevel level) {
         return toLog(s -> logger.log(level, s));
     }
@@ -655,6 +684,8 @@ public abstract class SharedUtil {
     ///
     /// @param logger The logger to log to
     /// @return The output stream
+    /// @deprecated Use [#toLog(Consumer, Charset)], which does not need a pipe and thread per stream
+    @Deprecated
     public static PipedOutputStream toLog(Consumer<? super String> logger) {
         final PipedOutputStream output;
         final PipedInputStream input;
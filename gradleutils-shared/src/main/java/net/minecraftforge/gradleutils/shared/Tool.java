@@ -8,12 +8,15 @@ import org.gradle.api.Named;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.jvm.toolchain.JavaLauncher;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 /// Tools are definitions of Java libraries (may or may not be executable) that are managed by Gradle using a
@@ -46,6 +49,31 @@ public sealed interface Tool extends Named, Serializable permits ToolInternal, T
         return new ToolImpl(name, artifact, mavenUrl, javaVersion, null);
     }
 
+    /// Creates a new tool with the given information.
+    ///
+    /// @param name        The name for this tool, used to reference it in configuration and for the file name
+    /// @param artifact    The artifact for this tool, used to get the download URL
+    /// @param mavenUrls   The maven URLs this tool is hosted on, in order of preference (see
+    ///                    [#of(String, String, String, int, String)] for formatting)
+    /// @param javaVersion The Java version this tool was built with, or should run on
+    /// @param mainClass   The main class to use when executing this tool (optional)
+    /// @return The tool
+    static Tool of(String name, String artifact, List<String> mavenUrls, int javaVersion, @Nullable String mainClass) {
+        return new ToolImpl(name, artifact, mavenUrls, javaVersion, mainClass);
+    }
+
+    /// Creates a new tool with the given information.
+    ///
+    /// @param name        The name for this tool, used to reference it in configuration and for the file name
+    /// @param artifact    The artifact for this tool, used to get the download URL
+    /// @param mavenUrls   The maven URLs this tool is hosted on, in order of preference (see
+    ///                    [#of(String, String, String, int, String)] for formatting)
+    /// @param javaVersion The Java version this tool was built with, or should run on
+    /// @return The tool
+    static Tool of(String name, String artifact, List<String> mavenUrls, int javaVersion) {
+        return new ToolImpl(name, artifact, mavenUrls, javaVersion, null);
+    }
+
     /// Creates a new tool with the given information.
     ///
     /// @param name        The name for this tool, used to reference it in configuration and for the file name
@@ -116,6 +144,13 @@ public sealed interface Tool extends Named, Serializable permits ToolInternal, T
         /// @apiNote This will *not* be used if [#getClasspath()] has a value set.
         Property<String> getArtifact();
 
+        /// Gets the Maven repositories to download this tool from, in order of preference. If a download from one
+        /// repository fails, the next one is tried. If empty, the repositories set by the plugin will be used.
+        ///
+        /// @return The Maven URLs to use for this tool.
+        /// @apiNote This will *not* be used if [#getClasspath()] has a value set.
+        ListProperty<String> getMavenUrls();
+
         /// Gets the classpath to use for the tool. If empty, the static default set by the plugin will be used.
         ///
         /// @return The classpath
@@ -136,6 +171,119 @@ public sealed interface Tool extends Named, Serializable permits ToolInternal, T
         /// @return The property for the Java launcher
         /// @see org.gradle.jvm.toolchain.JavaToolchainService#launcherFor(Action)
         Property<JavaLauncher> getJavaLauncher();
+
+        /// Gets how tasks should execute this tool. If empty, the tool is [forked][ExecutionMode#FORK] for every
+        /// execution.
+        ///
+        /// @return The property for the execution mode
+        /// @see ExecutionMode
+        Property<ExecutionMode> getExecutionMode();
+
+        /// Gets if the JVM arguments of the tool should be chosen from the history of its previous runs. If empty,
+        /// they are not.
+        ///
+        /// The heap size is chosen from how much heap previous runs used, and the garbage collector and JIT
+        /// compilation flags from how long they ran and how much time they spent in GC. JVM arguments given to the
+        /// tool always take precedence. This only applies when the tool is [forked][ExecutionMode#FORK].
+        ///
+        /// @return The property for if the JVM arguments should be adaptive
+        /// @see #getMinHeapSize()
+        /// @see #getMaxHeapSize()
+        Property<Boolean> getAdaptiveJvmArgs();
+
+        /// Gets the smallest heap size that may be chosen for the tool if its [JVM arguments are
+        /// adaptive][#getAdaptiveJvmArgs()], in the same format as `-Xmx` (such as `512m`). If empty, it is 64 MiB.
+        ///
+        /// @return The property for the minimum heap size
+        Property<String> getMinHeapSize();
+
+        /// Gets the largest heap size that may be chosen for the tool if its [JVM arguments are
+        /// adaptive][#getAdaptiveJvmArgs()], in the same format as `-Xmx` (such as `2g`). If empty, it is the
+        /// physical memory divided by the maximum amount of Gradle workers.
+        ///
+        /// @return The property for the maximum heap size
+        Property<String> getMaxHeapSize();
+
+        /// Gets the heap size the tool is expected to use when it is [forked][ExecutionMode#FORK], in the same format as
+        /// `-Xmx` (such as `1g`). Forks of all tools share a memory budget, and wait for their expected memory to be
+        /// free before they start. If empty, the maximum heap size given in the tool's JVM arguments is used, or 512 MiB
+        /// if there is none.
+        ///
+        /// @return The property for the expected heap size
+        /// @see ToolsExtension#getMaxForkMemory()
+        Property<String> getExpectedHeapSize();
+
+        /// Gets the maximum amount of forks of the tool that may run at the same time, regardless of how much memory is
+        /// free. If empty, there is no limit.
+        ///
+        /// @return The property for the maximum concurrency
+        Property<Integer> getMaxConcurrency();
+
+        /// Gets the longest the tool may run when it is [forked][ExecutionMode#FORK]. Once it is exceeded, a thread
+        /// dump of the tool is written to the task's log, and the tool is stopped. If empty, there is no limit.
+        ///
+        /// @return The property for the deadline
+        Property<Duration> getDeadline();
+
+        /// Gets the longest the tool may go without writing any output when it is [forked][ExecutionMode#FORK]. Once
+        /// it is exceeded, a thread dump of the tool is written to the task's log, and the tool is stopped. If empty,
+        /// there is no limit.
+        ///
+        /// @return The property for the inactivity timeout
+        Property<Duration> getInactivityTimeout();
+
+        /// Gets if the tool can process only the inputs that changed since its last run. If empty, it cannot.
+        ///
+        /// This applies to tasks that declare their [incremental inputs][ToolExecBase#incrementalInputFiles]. On a full
+        /// run, each input is given to the tool preceded by the argument the task declared. On an incremental run,
+        /// each changed input file is preceded by `--added`, `--modified`, or `--removed` instead, and the tool is
+        /// expected to update its previous outputs.
+        ///
+        /// @return The property for if the tool is incremental
+        Property<Boolean> getIncremental();
+    }
+
+    /// How a [ToolExecBase] executes its tool.
+    enum ExecutionMode {
+        /// Forks a new JVM for every execution. This is the most isolated mode, and the default.
+        FORK,
+
+        /// Runs the tool in a warm worker JVM kept alive by the Gradle daemon, reused by executions of the same tool
+        /// with the same Java launcher and JVM arguments. This avoids the JVM startup and class loading costs of
+        /// forking, which can dominate short-running tools.
+        ///
+        /// Each execution runs in its own class loader, with its own system properties. Tools that set environment
+        /// variables fall back to forking, and the working directory of the tool is that of the worker. If a tool
+        /// fails or calls [System#exit(int)], its worker is discarded.
+        POOLED,
+
+        /// Runs the tool in the Gradle daemon through the [worker API][org.gradle.workers.WorkerExecutor], in a
+        /// class loader isolated to the tool's classpath. This is the cheapest mode, and executions count towards
+        /// `--max-workers`.
+        ///
+        /// The tool runs on the daemon's JVM, so the task's Java launcher and JVM arguments are not used. Tools that
+        /// call [System#exit(int)] **must not** use this mode, as they would stop the daemon. Tools that set
+        /// environment variables fall back to forking, and tools that set system properties fall back to
+        /// [#PROCESS_ISOLATION], since the daemon's system properties are shared with everything else running in it.
+        CLASSLOADER_ISOLATION,
+
+        /// Runs the tool in a Gradle worker daemon through the [worker API][org.gradle.workers.WorkerExecutor], using
+        /// the task's Java launcher and JVM arguments. Worker daemons are reused by Gradle across tasks and builds,
+        /// and executions count towards `--max-workers`.
+        ///
+        /// Tools that set environment variables fall back to forking, and the working directory of the tool is that
+        /// of the worker daemon.
+        PROCESS_ISOLATION,
+
+        /// Like [#POOLED], but executions of the same tool with the same Java launcher, JVM arguments, and system
+        /// properties that run at the same time (such as the same task in sibling projects) share a single worker JVM,
+        /// running on a thread pool inside of it. The size of the thread pool is set by
+        /// [ToolExecBase#getBatchThreads()], where `1` runs the executions one after the other.
+        ///
+        /// Each execution's output and exit code are still reported by the task that ran it. Tools that keep mutable
+        /// static state must not use this mode, and if a tool calls [System#exit(int)], every execution sharing its
+        /// worker ends with its exit code.
+        BATCHED
     }
 
     /// A resolved tool that has a [classpath][#getClasspath()] that can be readily used.
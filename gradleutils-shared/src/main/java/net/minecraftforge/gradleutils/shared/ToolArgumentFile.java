@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+/// A [JDK argument file](https://docs.oracle.com/en/java/javase/17/docs/specs/man/java.html#java-command-line-argument-files)
+/// holding the whole command line of a [forked][Tool.ExecutionMode#FORK] tool, so that the tool can be started with
+/// `java @file` no matter how many arguments it has.
+///
+/// The `java` launcher only expands argument files that come before the main class, so the tool's arguments cannot be
+/// given in a file of their own. Instead, the file holds everything: the JVM arguments, system properties, classpath,
+/// main class, and the tool's arguments. Every argument is quoted, so that spaces and other special characters in
+/// paths are kept as they are.
+final class ToolArgumentFile {
+    /// Argument files were added in Java 9.
+    private static final int MIN_JAVA_VERSION = 9;
+
+    /// The length of a command line, in characters, from which an argument file is used by default. It is well below
+    /// the limits of every operating system, including the 32767 characters of Windows.
+    static final int DEFAULT_THRESHOLD = 16 * 1024;
+
+    private ToolArgumentFile() { }
+
+    /// Checks if a command line of the given arguments should be written to an argument file.
+    ///
+    /// @param javaVersion The Java version of the launcher
+    /// @param threshold   The length of the command line, in characters, from which an argument file is used
+    /// @param arguments   The arguments of the command line
+    /// @return If an argument file should be used
+    @SafeVarargs
+    static boolean isNeeded(int javaVersion, int threshold, Iterable<String>... arguments) {
+        if (javaVersion < MIN_JAVA_VERSION) return false;
+
+        long length = 0;
+        for (var list : arguments) {
+            for (var argument : list) {
+                // each argument is separated by a space
+                length += argument.length() + 1;
+                if (length >= threshold) return true;
+            }
+        }
+
+        return false;
+    }
+
+    /// Writes an argument file.
+    ///
+    /// @param file             The file to write
+    /// @param jvmArgs          The JVM arguments
+    /// @param systemProperties The system properties
+    /// @param classpath        The classpath
+    /// @param mainClass        The main class, or `null` to use the `Main-Class` of the first jar on the classpath
+    /// @param args             The arguments to the tool
+    /// @throws IOException If the file could not be written, or there is no main class
+    static void write(Path file, List<String> jvmArgs, Map<String, String> systemProperties, Iterable<File> classpath, @Nullable String mainClass, List<String> args) throws IOException {
+        var classpathFiles = new StringBuilder();
+        File firstFile = null;
+        for (var f : classpath) {
+            if (firstFile == null)
+                firstFile = f;
+            else
+                classpathFiles.append(File.pathSeparatorChar);
+            classpathFiles.append(f.getAbsolutePath());
+        }
+
+        if (mainClass == null)
+            mainClass = mainClassOf(firstFile);
+
+        // the launcher reads argument files in the platform's native encoding
+        var charset = Charset.forName(System.getProperty("native.encoding", Charset.defaultCharset().name()));
+        Files.createDirectories(file.getParent());
+        try (var writer = Files.newBufferedWriter(file, charset)) {
+            for (var arg : jvmArgs) {
+                write(writer, arg);
+            }
+            for (var property : systemProperties.entrySet()) {
+                write(writer, "-D" + property.getKey() + '=' + property.getValue());
+            }
+            write(writer, "-cp");
+            write(writer, classpathFiles.toString());
+            write(writer, mainClass);
+            for (var arg : args) {
+                write(writer, arg);
+            }
+        }
+    }
+
+    private static void write(Writer writer, String argument) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < argument.length(); i++) {
+            var c = argument.charAt(i);
+            switch (c) {
+                case '"', '\\' -> writer.write("\\" + c);
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> writer.write(c);
+            }
+        }
+        writer.write("\"\n");
+    }
+
+    /// Gets the main class of the given jar from its manifest.
+    ///
+    /// @param jar The jar, usually the first on the classpath
+    /// @return The main class
+    /// @throws IOException If the jar could not be read, or it has no main class
+    static String mainClassOf(@Nullable File jar) throws IOException {
+        if (jar == null)
+            throw new IOException("No main class given and the classpath is empty");
+
+        String mainClass;
+        try (var jarFile = new JarFile(jar)) {
+            var manifest = jarFile.getManifest();
+            mainClass = manifest != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+        }
+        if (mainClass == null)
+            throw new IOException("No main class given and " + jar + " has no Main-Class");
+
+        return mainClass;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+/// A dynamic [class data sharing](https://docs.oracle.com/en/java/javase/17/vm/class-data-sharing.html) archive for
+/// a forked tool JVM, which lets the JVM map the tool's classes from the archive instead of loading and verifying them
+/// from its jars on every run.
+///
+/// Archives are named after a hash of the tool's classpath (the path, size, and modification time of each file), of
+/// the Java installation, and of the JVM arguments that the archive depends on (the garbage collector, compressed
+/// pointers, object alignment, and whether the maximum heap allows compressed pointers), so a changed classpath, JDK,
+/// or heap layout simply uses a different archive instead of one the JVM would reject. The first run without an
+/// archive creates it with `-XX:ArchiveClassesAtExit`, writing to a temporary file that is only moved into place if
+/// the tool succeeds, and later runs use it with `-XX:SharedArchiveFile`. If the archive cannot be used, the JVM
+/// silently falls back to loading classes normally.
+///
+/// @param file   The archive file
+/// @param create The temporary file to create the archive in, or `null` if the archive already exists
+record ToolClassDataSharing(Path file, @Nullable Path create) {
+    private static final Logger LOGGER = Logging.getLogger(ToolClassDataSharing.class);
+
+    /// Dynamic archives were added in Java 13.
+    private static final int MIN_JAVA_VERSION = 13;
+
+    /// How long an archive may go unused before it is deleted when another archive is created next to it.
+    private static final Duration MAX_UNUSED = Duration.ofDays(30);
+
+    /// The largest heap that compressed pointers can address, above which the JVM disables them.
+    private static final long MAX_COMPRESSED_HEAP = 32L * 1024 * 1024 * 1024;
+
+    /// Gets the archive for the given tool.
+    ///
+    /// @param dir       The directory to keep archives in
+    /// @param launcher  The Java launcher the tool is forked with
+    /// @param classpath The classpath of the tool
+    /// @param jvmArgs   The JVM arguments of the tool, including any chosen by [ToolJvmSizing]
+    /// @return The archive, or `null` if it cannot be used with the given tool
+    static @Nullable ToolClassDataSharing of(File dir, JavaLauncher launcher, Iterable<File> classpath, List<String> jvmArgs) {
+        var metadata = launcher.getMetadata();
+        if (!metadata.getLanguageVersion().canCompileOrRun(MIN_JAVA_VERSION)) return null;
+
+        for (var arg : jvmArgs) {
+            // the tool manages class data sharing itself
+            if (arg.startsWith("-Xshare") || arg.contains("SharedArchiveFile") || arg.contains("ArchiveClassesAtExit"))
+                return null;
+        }
+
+        var digest = ToolStore.digest("sha256");
+        digest.update((launcher.getExecutablePath().getAsFile().getAbsolutePath() + '\n'
+            + metadata.getJavaRuntimeVersion() + '\n'
+            + metadata.getJvmVersion() + '\n'
+            + metadata.getVendor() + '\n'
+            + layout(jvmArgs) + '\n').getBytes(StandardCharsets.UTF_8));
+        for (var file : classpath) {
+            // archives can only be created from jars
+            if (!file.isFile()) return null;
+
+            digest.update((file.getAbsolutePath() + '\n' + file.length() + '\n' + file.lastModified() + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+
+        var file = dir.toPath().resolve(HexFormat.of().formatHex(digest.digest()) + ".jsa");
+        if (Files.isRegularFile(file)) {
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                LOGGER.debug("Failed to update last use of class data sharing archive {}", file, e);
+            }
+            return new ToolClassDataSharing(file, null);
+        }
+
+        try {
+            Files.createDirectories(dir.toPath());
+            return new ToolClassDataSharing(file, Files.createTempFile(dir.toPath(), file.getFileName().toString(), ".tmp"));
+        } catch (IOException e) {
+            LOGGER.info("Failed to prepare class data sharing archive {}", file, e);
+            return null;
+        }
+    }
+
+    /// Gets the JVM arguments that an archive depends on, as the JVM rejects archives created with a different heap
+    /// layout. The exact heap size is left out so that [adaptive sizing][ToolJvmSizing] does not create a new archive
+    /// every time it changes the heap, only whether it is too large for compressed pointers is kept.
+    ///
+    /// @param jvmArgs The JVM arguments of the tool
+    /// @return The JVM arguments that the archive depends on
+    private static String layout(List<String> jvmArgs) {
+        var layout = new StringBuilder();
+        for (var arg : jvmArgs) {
+            if (((arg.startsWith("-XX:+Use") || arg.startsWith("-XX:-Use")) && arg.endsWith("GC"))
+                || arg.startsWith("-XX:+UseCompressed") || arg.startsWith("-XX:-UseCompressed")
+                || arg.startsWith("-XX:ObjectAlignmentInBytes="))
+                layout.append(arg).append(' ');
+
+            String size;
+            if (arg.startsWith("-Xmx"))
+                size = arg.substring("-Xmx".length());
+            else if (arg.startsWith("-XX:MaxHeapSize="))
+                size = arg.substring(arg.indexOf('=') + 1);
+            else
+                continue;
+
+            try {
+                layout.append(ToolJvmSizing.parseSize(size) > MAX_COMPRESSED_HEAP ? "-large-heap " : "-compressed-heap ");
+            } catch (IllegalArgumentException ignored) {
+                // the JVM will report it
+            }
+        }
+
+        return layout.toString();
+    }
+
+    /// The JVM arguments to use or create the archive.
+    ///
+    /// @return The JVM arguments
+    List<String> jvmArgs() {
+        // warnings about classes that cannot be archived would otherwise end up in the tool's output
+        return this.create != null
+            ? List.of("-XX:ArchiveClassesAtExit=" + this.create, "-Xlog:cds=off", "-Xlog:cds+dynamic=off")
+            : List.of("-XX:SharedArchiveFile=" + this.file, "-Xshare:auto", "-Xlog:cds=off", "-Xlog:cds+dynamic=off");
+    }
+
+    /// Finishes creating the archive, if it was being created.
+    ///
+    /// @param exitValue The exit value of the tool
+    void complete(int exitValue) {
+        if (this.create == null) return;
+
+        try {
+            if (exitValue == 0 && Files.size(this.create) > 0) {
+                Files.move(this.create, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                LOGGER.info("Created class data sharing archive {}", this.file);
+                this.deleteUnused();
+            }
+        } catch (IOException e) {
+            LOGGER.info("Failed to create class data sharing archive {}", this.file, e);
+        } finally {
+            try {
+                Files.deleteIfExists(this.create);
+            } catch (IOException ignored) { }
+        }
+    }
+
+    private void deleteUnused() throws IOException {
+        var oldest = System.currentTimeMillis() - MAX_UNUSED.toMillis();
+        try (var archives = Files.list(this.file.getParent())) {
+            for (var archive : (Iterable<Path>) archives::iterator) {
+                if (archive.equals(this.file)) continue;
+
+                var name = archive.getFileName().toString();
+                if ((name.endsWith(".jsa") || name.endsWith(".tmp")) && Files.getLastModifiedTime(archive).toMillis() < oldest)
+                    Files.deleteIfExists(archive);
+            }
+        }
+    }
+}
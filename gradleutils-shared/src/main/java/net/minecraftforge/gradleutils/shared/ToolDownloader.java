@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// Downloads tools over HTTP, resuming partial downloads, retrying with exponential backoff, and falling back to the
+/// next mirror when one fails. Large artifacts can optionally be downloaded over multiple connections at once.
+final class ToolDownloader {
+    private static final Logger LOGGER = Logging.getLogger(ToolDownloader.class);
+
+    private static final int CONNECT_TIMEOUT = 30_000;
+    private static final int READ_TIMEOUT = 60_000;
+
+    /// Artifacts smaller than this are always downloaded over a single connection.
+    static final long CHUNKED_THRESHOLD = 8L * 1024 * 1024;
+    /// The smallest range to request per connection when downloading in chunks.
+    private static final long MIN_CHUNK_SIZE = 2L * 1024 * 1024;
+
+    /// How downloads should be done.
+    ///
+    /// @param retries     The amount of times to retry after the first attempt has failed on every mirror
+    /// @param backoff     The time to wait before the first retry, which doubles with every retry
+    /// @param connections The maximum amount of connections to use for a single artifact (`1` disables chunking)
+    /// @param offline     If Gradle is running in offline mode, in which case nothing may be downloaded
+    record Options(int retries, Duration backoff, int connections, boolean offline) implements Serializable {
+        private static final @Serial long serialVersionUID = 2930489361245073218L;
+
+        static final Options DEFAULT = new Options(3, Duration.ofSeconds(1), 1, false);
+    }
+
+    /// Thrown when a download is required while Gradle is running in offline mode.
+    static final class OfflineException extends IOException {
+        private static final @Serial long serialVersionUID = -2472005126180409321L;
+
+        private final String fileName;
+        private final List<String> urls;
+
+        OfflineException(Path file, List<String> urls) {
+            super("Cannot download %s while Gradle is in offline mode".formatted(file.getFileName()));
+            this.fileName = file.getFileName().toString();
+            this.urls = List.copyOf(urls);
+        }
+
+        /// The name of the file that would have been downloaded.
+        ///
+        /// @return The file name
+        String getFileName() {
+            return this.fileName;
+        }
+
+        /// The URLs the file would have been downloaded from.
+        ///
+        /// @return The download URLs
+        List<String> getUrls() {
+            return this.urls;
+        }
+    }
+
+    private ToolDownloader() { }
+
+    /// Downloads a file from the first mirror that has it.
+    ///
+    /// If the file already partially exists, the download will be resumed using an HTTP range request if the server
+    /// supports it. Failed attempts are retried according to the given options, and are resumed as well.
+    ///
+    /// If more than one connection is allowed and the artifact is large enough, it is split into byte ranges which
+    /// are downloaded in parallel and written directly into their position in the file.
+    ///
+    /// @param file    The file to download to
+    /// @param urls    The URLs to download the file from, in order of preference
+    /// @param options The download options
+    /// @throws IOException      If the file could not be downloaded from any mirror
+    /// @throws OfflineException If Gradle is running in offline mode
+    static void download(Path file, List<String> urls, Options options) throws IOException {
+        if (options.offline())
+            throw new OfflineException(file, urls);
+
+        IOException failure = null;
+        for (int attempt = 0; attempt <= options.retries(); attempt++) {
+            if (attempt > 0) {
+                var backoff = options.backoff().multipliedBy(1L << Math.min(attempt - 1, 16));
+                LOGGER.info("Retrying download of {} in {} ms (attempt {} of {})", file.getFileName(), backoff.toMillis(), attempt + 1, options.retries() + 1);
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    var interrupted = new InterruptedIOException("Interrupted while waiting to retry download of " + file.getFileName());
+                    if (failure != null) interrupted.addSuppressed(failure);
+                    throw interrupted;
+                }
+            }
+
+            boolean missing = true;
+            for (var url : urls) {
+                try {
+                    if (options.connections() <= 1 || Files.exists(file) || !transferChunked(file, url, options.connections()))
+                        transfer(file, url);
+                    return;
+                } catch (FileNotFoundException e) {
+                    LOGGER.info("Not found on mirror: {}", url);
+                    failure = addSuppressed(failure, e);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to download from {}: {}", url, e.toString());
+                    failure = addSuppressed(failure, e);
+                    missing = false;
+                }
+            }
+
+            // no point in retrying if no mirror has the file
+            if (missing) break;
+        }
+
+        throw failure != null ? failure : new IOException("No URLs to download from for " + file.getFileName());
+    }
+
+    private static IOException addSuppressed(@Nullable IOException failure, IOException e) {
+        if (failure == null) return e;
+
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    private static void transfer(Path file, String url) throws IOException {
+        var existing = Files.exists(file) ? Files.size(file) : 0L;
+
+        var connection = open(url);
+        try {
+            if (existing > 0)
+                connection.setRequestProperty("Range", "bytes=" + existing + '-');
+
+            var code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE)
+                throw new FileNotFoundException(url);
+
+            boolean resume;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                if (!startsAt(connection.getHeaderField("Content-Range"), existing)) {
+                    if (existing == 0)
+                        throw new IOException("Unexpected partial response from %s: %s".formatted(url, connection.getHeaderField("Content-Range")));
+
+                    // the server sent a different range than was asked for, so the partial file can't be resumed
+                    LOGGER.info("Server did not resume download of {} from {} bytes, restarting", file.getFileName(), existing);
+                    connection.disconnect();
+                    Files.delete(file);
+                    transfer(file, url);
+                    return;
+                }
+
+                LOGGER.info("Resuming download of {} from {} bytes", file.getFileName(), existing);
+                resume = true;
+            } else if (code == 416 && existing > 0) {
+                // requested range not satisfiable, the partial file is either complete or invalid
+                Files.delete(file);
+                throw new IOException("Partial download of %s is invalid, restarting".formatted(file.getFileName()));
+            } else if (code / 100 == 2) {
+                resume = false;
+            } else {
+                throw new IOException("Unexpected response code %d from %s".formatted(code, url));
+            }
+
+            try (var in = connection.getInputStream();
+                 var out = resume
+                     ? Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                     : Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                in.transferTo(out);
+            }
+
+            var expected = connection.getContentLengthLong();
+            if (expected >= 0) {
+                var actual = Files.size(file) - (resume ? existing : 0);
+                if (actual != expected)
+                    throw new IOException("Incomplete download of %s: expected %d bytes, got %d".formatted(url, expected, actual));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /// Downloads the file over multiple connections, if the server supports range requests and the file is large
+    /// enough to benefit from it.
+    ///
+    /// @return `false` if the file should instead be downloaded over a single connection
+    private static boolean transferChunked(Path file, String url, int connections) throws IOException {
+        long length;
+        var head = open(url);
+        try {
+            head.setRequestMethod("HEAD");
+            var code = head.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE)
+                throw new FileNotFoundException(url);
+
+            length = head.getContentLengthLong();
+            var ranges = head.getHeaderField("Accept-Ranges");
+            if (code / 100 != 2 || length < CHUNKED_THRESHOLD || !"bytes".equalsIgnoreCase(ranges))
+                return false;
+        } finally {
+            head.disconnect();
+        }
+
+        var chunks = (int) Math.min(connections, Math.max(1, length / MIN_CHUNK_SIZE));
+        var chunkSize = (length + chunks - 1) / chunks;
+        LOGGER.info("Downloading {} ({} bytes) over {} connections", file.getFileName(), length, chunks);
+
+        var executor = Executors.newFixedThreadPool(chunks);
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            // preallocate, so that every chunk can be written at its own position
+            channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+
+            var futures = new ArrayList<Future<?>>(chunks);
+            for (long start = 0; start < length; start += chunkSize) {
+                var from = start;
+                var to = Math.min(length, start + chunkSize) - 1;
+                futures.add(executor.submit(() -> {
+                    transferRange(channel, url, from, to);
+                    return null;
+                }));
+            }
+
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            // the file has holes in it, so it can't be resumed from
+            Files.deleteIfExists(file);
+
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading " + url);
+            }
+
+            var cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw cause instanceof IOException io ? io : new IOException("Failed to download " + url, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return true;
+    }
+
+    /// Checks if a `Content-Range` header, such as `bytes 100-199/1000`, starts at the given offset.
+    private static boolean startsAt(@Nullable String contentRange, long offset) {
+        if (contentRange == null) return false;
+
+        var range = contentRange.trim();
+        if (!range.regionMatches(true, 0, "bytes ", 0, "bytes ".length())) return false;
+
+        var dash = range.indexOf('-');
+        if (dash < 0) return false;
+
+        try {
+            return Long.parseLong(range.substring("bytes ".length(), dash).trim()) == offset;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        var connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setInstanceFollowRedirects(true);
+        return connection;
+    }
+
+    private static void transferRange(FileChannel channel, String url, long from, long to) throws IOException {
+        // the read timeout applies to every read of the body, so a stalled range fails instead of hanging
+        var connection = open(url);
+        connection.setRequestProperty("Range", "bytes=" + from + '-' + to);
+
+        var code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_PARTIAL || !startsAt(connection.getHeaderField("Content-Range"), from)) {
+            connection.disconnect();
+            throw new IOException("Server did not honor range request for %s (response code %d)".formatted(url, code));
+        }
+
+        // the body is read to the end and closed, so that the connection can be reused for the next range
+        try (var in = connection.getInputStream()) {
+            var buffer = new byte[64 * 1024];
+            var position = from;
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                var byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining())
+                    position += channel.write(byteBuffer, position);
+            }
+
+            if (position != to + 1)
+                throw new IOException("Incomplete download of %s: expected bytes %d-%d, got up to %d".formatted(url, from, to, position - 1));
+        }
+    }
+}
@@ -13,9 +13,12 @@ import org.gradle.api.artifacts.MinimalExternalModuleDependency;
 import org.gradle.api.artifacts.dsl.DependencyFactory;
 import org.gradle.api.artifacts.dsl.ExternalModuleDependencyVariantSpec;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.Directory;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileSystemLocation;
 import org.gradle.api.file.FileSystemLocationProperty;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.logging.LogLevel;
 import org.gradle.api.logging.LoggingManager;
@@ -27,6 +30,7 @@ import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.provider.ProviderConvertible;
 import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Console;
 import org.gradle.api.tasks.Input;
@@ -35,28 +39,45 @@ import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.JavaExec;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.jvm.toolchain.JavaLanguageVersion;
 import org.gradle.jvm.toolchain.JavaLauncher;
 import org.gradle.jvm.toolchain.JavaToolchainService;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecResult;
+import org.gradle.process.ProcessExecutionException;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
 import org.jetbrains.annotations.MustBeInvokedByOverriders;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnknownNullability;
 
 import javax.inject.Inject;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /// This tool execution task is a template on top of [JavaExec] to make executing [tools][Tool] much easier and more
 /// consistent between plugins.
@@ -73,9 +94,18 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
     /// The default tool directory (usage is not required).
     protected final DirectoryProperty defaultToolDir = this.getObjects().directoryProperty();
     private final ListProperty<String> additionalArgs = this.getObjects().listProperty(String.class);
+    private final List<FileArgument> fileArgs = new ArrayList<>();
+    private @Nullable FileArgument incrementalInputs;
+    private final int maxWorkers;
+    private final String toolName;
+    private final Property<ToolMetrics> metrics = this.getObjects().property(ToolMetrics.class);
+    private final Property<ToolForkPermits> forkPermits = this.getObjects().property(ToolForkPermits.class);
 
     /// Additional arguments to use when invoking the tool. Use in configuration instead of [#args].
     ///
+    /// These arguments are inputs of the task as they are, so files should be declared with [#inputFile] or
+    /// [#outputFile] instead, to keep their absolute paths out of the task's [build cache][#getCacheable()] key.
+    ///
     /// @return The list property for the additional arguments
     public @Input @Optional ListProperty<String> getAdditionalArgs() {
         return this.additionalArgs;
@@ -97,6 +127,127 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
     protected abstract @Internal MapProperty<String, String> getForkProperties();
     //endregion
 
+    //region Execution
+    /// If the outputs of this task can be stored in and loaded from the build cache. Defaults to `true` if the task's
+    /// class, or any of its superclasses, is annotated with [CacheableTask] (which Gradle does not inherit on its own),
+    /// and `false` otherwise.
+    ///
+    /// Only cache tasks that declare all of the files their tool reads and writes, either with their own input and
+    /// output properties or with [#inputFile] and [#outputFile], so that a cached result is never reused for different
+    /// inputs.
+    ///
+    /// @return The property for if the task is cacheable
+    public abstract @Internal Property<Boolean> getCacheable();
+
+    /// How the tool is executed. Defaults to the [execution mode][Tool.Definition#getExecutionMode()] of the tool's
+    /// definition, or [forking][Tool.ExecutionMode#FORK] if it has none.
+    ///
+    /// @return The property for the execution mode
+    public abstract @Internal Property<Tool.ExecutionMode> getExecutionMode();
+
+    /// The maximum amount of executions a [pooled][Tool.ExecutionMode#POOLED] or [batched][Tool.ExecutionMode#BATCHED]
+    /// worker runs before it is replaced with a fresh one, to limit the effects of tools leaking memory or state.
+    /// Defaults to `50`.
+    ///
+    /// @return The property for the maximum amount of worker runs
+    public abstract @Internal Property<Integer> getMaxWorkerRuns();
+
+    /// The maximum amount of executions a [batched][Tool.ExecutionMode#BATCHED] worker runs at once. Defaults to the
+    /// maximum amount of Gradle workers, as no more tasks than that can be running at once.
+    ///
+    /// @return The property for the amount of batch threads
+    public abstract @Internal Property<Integer> getBatchThreads();
+
+    /// If a [class data sharing][ToolClassDataSharing] archive should be created and used for the tool, so that
+    /// [forked][Tool.ExecutionMode#FORK] runs start faster. The archive is kept in the
+    /// [default tool directory][#defaultToolDir], and requires Java 13 or newer. Defaults to `false`.
+    ///
+    /// @return The property for if class data sharing should be used
+    public abstract @Internal Property<Boolean> getClassDataSharing();
+
+    /// If the JVM arguments of the tool should be chosen from the history of its previous runs. Defaults to the
+    /// [tool's definition][Tool.Definition#getAdaptiveJvmArgs()], or `false` if it does not set it. This requires
+    /// Java 9 or newer, as the history is read from the tool's GC log.
+    ///
+    /// @return The property for if the JVM arguments should be adaptive
+    public abstract @Internal Property<Boolean> getAdaptiveJvmArgs();
+
+    /// The smallest heap size that may be chosen if the [JVM arguments are adaptive][#getAdaptiveJvmArgs()]. Defaults
+    /// to the [tool's definition][Tool.Definition#getMinHeapSize()].
+    ///
+    /// @return The property for the minimum heap size
+    public abstract @Internal @Optional Property<String> getMinHeapSize();
+
+    /// The largest heap size that may be chosen if the [JVM arguments are adaptive][#getAdaptiveJvmArgs()]. Defaults
+    /// to the [tool's definition][Tool.Definition#getMaxHeapSize()].
+    ///
+    /// @return The property for the maximum heap size
+    public abstract @Internal @Optional Property<String> getMaxHeapSize();
+
+    /// The heap size the tool is expected to use when [forked][Tool.ExecutionMode#FORK], which is reserved from the
+    /// [memory shared by all forks][ToolsExtension#getMaxForkMemory()] before the tool starts. Defaults to the
+    /// [tool's definition][Tool.Definition#getExpectedHeapSize()]. If absent, the maximum heap size in the JVM
+    /// arguments is used, or 512 MiB if there is none.
+    ///
+    /// @return The property for the expected heap size
+    public abstract @Internal @Optional Property<String> getExpectedHeapSize();
+
+    /// The maximum amount of forks of this tool that may run at once. Defaults to the
+    /// [tool's definition][Tool.Definition#getMaxConcurrency()]. If absent, there is no limit other than memory.
+    ///
+    /// @return The property for the maximum concurrency
+    public abstract @Internal @Optional Property<Integer> getMaxConcurrency();
+
+    /// The length of the command line, in characters, from which a [forked][Tool.ExecutionMode#FORK] tool is started
+    /// with a [JDK argument file][ToolArgumentFile] in the task's temporary directory instead, so that it cannot fail
+    /// on the operating system's limits. Argument files require Java 9 or newer. Defaults to `16384`, `0` always uses
+    /// an argument file.
+    ///
+    /// @return The property for the argument file threshold
+    public abstract @Internal Property<Integer> getArgumentFileThreshold();
+
+    /// The amount of inputs in each shard, if the task [shards][#shards(Iterable, Function)] its inputs. Defaults to
+    /// `1`, which runs the tool once per input.
+    ///
+    /// @return The property for the shard size
+    public abstract @Internal Property<Integer> getShardSize();
+
+    /// The maximum amount of shards that run at the same time, if the task [shards][#shards(Iterable, Function)] its
+    /// inputs. Defaults to the maximum amount of Gradle workers. Forked shards are also limited by the
+    /// [memory shared by all forks][ToolsExtension#getMaxForkMemory()]. Shards run through the worker API are only
+    /// limited by `--max-workers`.
+    ///
+    /// @return The property for the shard parallelism
+    public abstract @Internal Property<Integer> getShardParallelism();
+
+    /// If only the [incremental inputs][#incrementalInputFiles] that changed since the last successful run are given
+    /// to the tool, as described by [Tool.Definition#getIncremental()]. Defaults to the tool's definition, or `false`
+    /// if it does not set it.
+    ///
+    /// @return The property for if the tool is run incrementally
+    public abstract @Internal Property<Boolean> getIncremental();
+
+    /// The longest a [forked][Tool.ExecutionMode#FORK] tool may run before it is stopped, with a thread dump of it
+    /// written to the task's log. Defaults to the [tool's definition][Tool.Definition#getDeadline()]. If absent, there
+    /// is no limit.
+    ///
+    /// @return The property for the deadline
+    public abstract @Internal @Optional Property<Duration> getDeadline();
+
+    /// The longest a [forked][Tool.ExecutionMode#FORK] tool may go without writing any output before it is stopped,
+    /// with a thread dump of it written to the task's log. Defaults to the
+    /// [tool's definition][Tool.Definition#getInactivityTimeout()]. If absent, there is no limit.
+    ///
+    /// @return The property for the inactivity timeout
+    public abstract @Internal @Optional Property<Duration> getInactivityTimeout();
+
+    /// If the [metrics][ToolMetrics] of this execution should be collected into the build's tool metrics report.
+    /// Defaults to the [tools extension][ToolsExtension#getCollectMetrics()].
+    ///
+    /// @return The property for if metrics should be collected
+    public abstract @Internal Property<Boolean> getCollectMetrics();
+    //endregion
+
     //region Logging
     @Deprecated
     @Override public LoggingManager getLogging() {
@@ -108,6 +259,33 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
     protected abstract @Console Property<LogLevel> getStandardErrorLogLevel();
 
     protected abstract @Internal RegularFileProperty getLogFile();
+
+    /// The format of the [log file][#getLogFile()]. Defaults to [plain text][LogFormat#TEXT].
+    ///
+    /// @return The property for the log format
+    protected abstract @Internal Property<LogFormat> getLogFormat();
+
+    /// If the [log file][#getLogFile()] should be compressed with gzip, in which case `.gz` is appended to its name.
+    /// Defaults to `false`.
+    ///
+    /// @return The property for if the log should be compressed
+    protected abstract @Internal Property<Boolean> getCompressLog();
+
+    /// The size, in characters, after which the [log file][#getLogFile()] is rotated. If absent, the log is never
+    /// rotated.
+    ///
+    /// @return The property for the log rotation size
+    protected abstract @Internal @Optional Property<Long> getLogRotationSize();
+
+    /// The format of a tool's log file.
+    public enum LogFormat {
+        /// The output of the tool as plain text, preceded by a description of the execution.
+        TEXT,
+
+        /// One JSON object per line, each with the `time` it was written at, the `stream` it came from (`header`,
+        /// `out`, or `err`), and the `line` itself. This makes it possible to tell which phases of a tool were slow.
+        JSONL
+    }
     //endregion
 
     protected abstract @Inject ObjectFactory getObjects();
@@ -120,6 +298,8 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
 
     protected abstract @Inject JavaToolchainService getJavaToolchains();
 
+    protected abstract @Inject WorkerExecutor getWorkerExecutor();
+
     /// Creates a new task instance using the given types and tool information.
     ///
     /// @param tool The tool to use for this task
@@ -136,6 +316,42 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
 
         this.getClasspath().setFrom(resolved.getClasspath());
 
+        this.getCacheable().convention(isCacheableTask(this.getClass()));
+        this.getOutputs().cacheIf("Tool execution is cacheable", task -> this.getCacheable().get());
+
+        var plugin = getProject().getPlugins().getPlugin(this.pluginType());
+        // tools resolved through Gradle are not prefetched, so there is nothing to wait for
+        var toolsPrefetch = plugin.getToolsPrefetch();
+        if (toolsPrefetch != null)
+            this.dependsOn(this.getProviders().provider(() -> resolved instanceof ToolImpl.ResolvedImpl impl && !impl.isDownloaded() ? List.of() : List.of(toolsPrefetch)));
+
+        this.getExecutionMode().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getExecutionMode).orElse(Tool.ExecutionMode.FORK));
+        this.getMaxWorkerRuns().convention(50);
+        this.maxWorkers = getProject().getGradle().getStartParameter().getMaxWorkerCount();
+        this.getBatchThreads().convention(this.maxWorkers);
+        this.getClassDataSharing().convention(false);
+        this.getAdaptiveJvmArgs().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getAdaptiveJvmArgs).orElse(false));
+        this.getMinHeapSize().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getMinHeapSize));
+        this.getMaxHeapSize().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getMaxHeapSize));
+
+        this.getExpectedHeapSize().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getExpectedHeapSize));
+        this.getMaxConcurrency().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getMaxConcurrency));
+        this.getArgumentFileThreshold().convention(ToolArgumentFile.DEFAULT_THRESHOLD);
+        this.getShardSize().convention(1);
+        this.getShardParallelism().convention(this.maxWorkers);
+        this.getIncremental().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getIncremental).orElse(false));
+        this.getDeadline().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getDeadline));
+        this.getInactivityTimeout().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getInactivityTimeout));
+        var toolForkPermits = plugin.getToolForkPermits();
+        this.usesService(toolForkPermits);
+        this.forkPermits.set(toolForkPermits);
+
+        this.toolName = tool.getName();
+        this.getCollectMetrics().convention(plugin.getCollectToolMetrics());
+        var toolMetrics = plugin.getToolMetrics();
+        this.usesService(toolMetrics);
+        this.metrics.set(toolMetrics);
+
         if (resolved.hasMainClass())
             this.getMainClass().set(resolved.getMainClass());
         this.getJavaLauncher().set(resolved.getJavaLauncher());
@@ -152,6 +368,8 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
 
         this.getWorkingDir().convention(this.getDefaultOutputDirectory());
         this.getLogFile().convention(this.getDefaultLogFile());
+        this.getLogFormat().convention(LogFormat.TEXT);
+        this.getCompressLog().convention(false);
     }
 
     public final void using(CharSequence dependency) {
@@ -188,7 +406,8 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
         var url = getProviders().provider(downloadUrl::toString);
         this.getClasspath().setFrom(getProviders().of(ToolImpl.Source.class, spec -> spec.parameters(parameters -> {
             parameters.getInputFile().set(getProviders().zip(localCaches(), url, (d, s) -> d.file("tools/" + name + '/' + s.substring(s.lastIndexOf('/')))));
-            parameters.getDownloadUrl().set(url);
+            parameters.getCachesDir().set(localCaches());
+            parameters.getDownloadUrls().add(url);
         })));
     }
 
@@ -199,6 +418,15 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
         return this.problems;
     }
 
+    private static boolean isCacheableTask(Class<?> type) {
+        for (Class<?> c = type; c != null && c != ToolExecBase.class; c = c.getSuperclass()) {
+            if (c.isAnnotationPresent(CacheableTask.class))
+                return true;
+        }
+
+        return false;
+    }
+
     private <T extends FileSystemLocation> Transformer<T, T> ensureFileLocationInternal() {
         return t -> this.getProblems().<T>ensureFileLocation().transform(t);
     }
@@ -208,28 +436,43 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
     @MustBeInvokedByOverriders
     protected void addArguments() { }
 
-    private transient @Nullable List<Provider<String>> args;
+    /// Holds each argument as a [Provider], or as a [FileArgument] for files that are only listed when the tool runs.
+    private transient @Nullable List<Object> args;
     private transient @Nullable List<Provider<String>> jvmArgs;
     private transient @Nullable Map<String, String> environment;
     private transient @Nullable Map<String, String> systemProperties;
+    private transient @Nullable Sharding sharding;
 
     /// @implNote Not invoking this method from an overriding method *will* result in the tool never being executed and
     /// [#addArguments()] never being run.
     @TaskAction
+    @SuppressWarnings("try") // the tool is only marked as in use while it runs
     protected ExecResult exec() throws IOException {
-        var logger = getLogger();
-
         this.args = new ArrayList<>();
         this.jvmArgs = new ArrayList<>();
         this.environment = new HashMap<>();
         this.systemProperties = new HashMap<>();
+        this.sharding = null;
 
         this.addArguments();
+        // absolute paths are only used to run the tool, the inputs and outputs are normalized
+        this.args.addAll(this.fileArgs);
         this.args(this.getAdditionalArgs().get());
 
-        var args = DefaultGroovyMethods.collect(this.args, Closures.<Provider<String>, String>function(Provider::get));
+        var args = new ArrayList<String>(this.args.size());
+        for (var arg : this.args) {
+            if (arg instanceof FileArgument fileArg) {
+                for (var file : fileArg.files()) {
+                    args.add(fileArg.arg());
+                    args.add(file.getAbsolutePath());
+                }
+            } else {
+                args.add(((Provider<?>) arg).get().toString());
+            }
+        }
         var jvmArgs = DefaultGroovyMethods.collect(this.jvmArgs, Closures.<Provider<String>, String>function(Provider::get));
 
+        var hasSystemProperties = !this.systemProperties.isEmpty();
         for (var property : this.getForkProperties().get().entrySet()) {
             this.systemProperties.putIfAbsent(property.getKey(), property.getValue());
         }
@@ -237,6 +480,9 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
         var stdOutLevel = this.getStandardOutputLogLevel().get();
         var stdErrLevel = this.getStandardErrorLogLevel().get();
 
+        var collectMetrics = this.getCollectMetrics().get();
+        var recorder = new ToolMetrics.Recorder();
+
         JavaLauncher javaLauncher;
         if (getPreferToolchainJvm().getOrElse(false)) {
             var candidateLauncher = getJavaLauncher().get();
@@ -247,66 +493,571 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
         } else {
             javaLauncher = getJavaLauncher().get();
         }
+        recorder.launcherResolved();
+
+        // resolved up front so that its time is measured on its own, later uses of the classpath are cached
+        this.getClasspath().getFiles();
+        recorder.classpathResolved();
 
         var workingDirectory = this.getWorkingDir().map(problems.ensureFileLocation()).get().getAsFile();
 
-        try (var log = new PrintWriter(new FileWriter(this.getLogFile().getAsFile().get()), true)) {
-            return getExecOperations().javaexec(spec -> {
+        var executable = javaLauncher.getExecutablePath().getAsFile().getAbsolutePath();
+        // workers share one environment, so tools that need their own can only be forked
+        var executionMode = this.environment.isEmpty() ? this.getExecutionMode().get() : Tool.ExecutionMode.FORK;
+        // the daemon's system properties are shared with every other task running in it
+        if (executionMode == Tool.ExecutionMode.CLASSLOADER_ISOLATION && hasSystemProperties)
+            executionMode = Tool.ExecutionMode.PROCESS_ISOLATION;
+        var execution = new Execution(javaLauncher, executable, workingDirectory, executionMode, jvmArgs, stdOutLevel, stdErrLevel, collectMetrics);
+
+        var incrementalStateFile = new File(this.getTemporaryDir(), "incremental.state").toPath();
+        var incrementalState = this.incrementalInputs != null ? this.addIncrementalInputs(this.incrementalInputs, incrementalStateFile, execution, args) : null;
+
+        try (var log = new ToolLog(this.getLogFile().getAsFile().get().toPath(), this.getLogFormat().get(), this.getCompressLog().get(), this.getLogRotationSize().getOrElse(0L));
+             var inUse = ToolsCleanup.use(this.getClasspath())) {
+            var result = this.sharding != null
+                ? this.runShards(execution, args, this.sharding, log, recorder)
+                : this.run(execution, args, this.getTemporaryDir(), log, recorder);
+
+            if (incrementalState != null && result.getExitValue() == 0) {
+                try {
+                    new ToolIncrementalState(incrementalState.fingerprint(), incrementalState.inputs(), ToolIncrementalState.snapshot(this.getOutputs().getFiles())).write(incrementalStateFile);
+                } catch (IOException e) {
+                    getLogger().info("Failed to save incremental state, the next run will process all inputs", e);
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /// Adds the incremental inputs to the arguments, which are only the inputs that changed since the last run if the
+    /// tool is [incremental][#getIncremental()] and nothing else has changed.
+    ///
+    /// @return The state of this run, without its outputs, or `null` if the tool is not incremental
+    private @Nullable ToolIncrementalState addIncrementalInputs(FileArgument incrementalInputs, Path stateFile, Execution execution, List<String> args) throws IOException {
+        if (!this.getIncremental().get()) {
+            addAll(args, incrementalInputs);
+            return null;
+        }
+
+        var inputs = ToolIncrementalState.snapshot(this.getObjects().fileCollection().from(incrementalInputs.files()));
+        var fingerprint = ToolIncrementalState.fingerprint(this.getInputs().getFiles(), inputs.keySet(), List.of(
+            execution.executable(),
+            this.getMainClass().getOrElse(""),
+            args,
+            execution.jvmArgs(),
+            new TreeMap<>(this.systemProperties),
+            new TreeMap<>(this.environment)
+        ));
+
+        var previous = ToolIncrementalState.read(stateFile);
+        // if this run fails, the next one cannot know what this one changed
+        Files.deleteIfExists(stateFile);
+
+        var changes = previous != null ? previous.changes(fingerprint, inputs, ToolIncrementalState.snapshot(this.getOutputs().getFiles())) : null;
+        if (changes != null)
+            args.addAll(changes.args());
+        else
+            addAll(args, incrementalInputs);
+
+        return new ToolIncrementalState(fingerprint, inputs, Map.of());
+    }
+
+    private static void addAll(List<String> args, FileArgument fileArg) {
+        for (var file : fileArg.files()) {
+            args.add(fileArg.arg());
+            args.add(file.getAbsolutePath());
+        }
+    }
+
+    private ExecResult runShards(Execution execution, List<String> args, Sharding sharding, ToolLog log, ToolMetrics.Recorder recorder) throws IOException {
+        var shardSize = Math.max(1, this.getShardSize().get());
+        var shards = new ArrayList<List<String>>();
+        List<String> shard = null;
+        int inputs = 0;
+        for (var input : sharding.inputs()) {
+            if (shard == null || inputs == shardSize) {
+                shard = new ArrayList<>(args);
+                shards.add(shard);
+                inputs = 0;
+            }
+
+            for (var arg : sharding.args().apply(input)) {
+                shard.add(arg instanceof Provider<?> provider ? String.valueOf(provider.get()) : String.valueOf(arg));
+            }
+            inputs++;
+        }
+
+        if (shards.isEmpty()) {
+            log.header("No inputs to shard, the tool was not run");
+            return new InProcessExecResult(0);
+        }
+
+        // the worker API runs shards at the same time itself, within the limit of --max-workers
+        var workers = isWorker(execution.executionMode());
+        var parallelism = workers ? 1 : Math.min(shards.size(), Math.max(1, this.getShardParallelism().get()));
+        if (workers)
+            this.getLogger().info("Running {} in {} shards through the worker API", this.toolName, shards.size());
+        else
+            this.getLogger().info("Running {} in {} shards, {} at a time", this.toolName, shards.size(), parallelism);
+
+        // logs of a previous execution must not be mistaken for those of shards that are skipped
+        for (int i = 0; i < shards.size(); i++) {
+            Files.deleteIfExists(this.shardLog(i));
+        }
+
+        var results = new ExecResult[shards.size()];
+        var failed = new AtomicBoolean();
+        var executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, r -> {
+            var thread = new Thread(r, "Tool Shard");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        try {
+            if (workers) {
+                this.runWorkerShards(execution, shards, results, recorder);
+            } else {
+                var futures = new ArrayList<Future<?>>(shards.size());
+                for (int i = 0; i < shards.size(); i++) {
+                    var index = i;
+                    Callable<Void> runShard = () -> {
+                        // once a shard has failed, the remaining ones are not started
+                        if (failed.get()) return null;
+
+                        var shardLog = this.shardLog(index);
+                        try (var runLog = new ToolLog(shardLog, this.getLogFormat().get(), false, 0)) {
+                            var result = this.run(execution, shards.get(index), shardLog.getParent().toFile(), runLog, recorder.split());
+                            results[index] = result;
+                            if (result.getExitValue() != 0)
+                                failed.set(true);
+                        } catch (Throwable e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        return null;
+                    };
+
+                    if (executor != null) {
+                        futures.add(executor.submit(runShard));
+                    } else {
+                        try {
+                            runShard.call();
+                        } catch (IOException | RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new IOException(e);
+                        }
+                    }
+                }
+
+                // every shard must have finished before their logs are merged
+                Throwable failure = null;
+                for (var future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for tool shards to finish");
+                    } catch (ExecutionException e) {
+                        if (failure == null) failure = e.getCause();
+                    }
+                }
+
+                if (failure instanceof IOException e) throw e;
+                if (failure instanceof RuntimeException e) throw e;
+                if (failure != null) throw new IOException("Tool shard failed", failure);
+            }
+        } finally {
+            if (executor != null)
+                executor.shutdownNow();
+
+            for (int i = 0; i < shards.size(); i++) {
+                var shardLog = this.shardLog(i);
+                log.header("==================== Shard " + (i + 1) + '/' + shards.size() + " ====================");
+                if (results[i] == null && !Files.exists(shardLog))
+                    log.header("Not run, as another shard failed");
+                else
+                    log.merge(shardLog);
+            }
+        }
+
+        // the first failure is the result of the task, as the remaining shards were skipped because of it
+        ExecResult result = null;
+        for (var shardResult : results) {
+            if (shardResult == null) continue;
+            if (shardResult.getExitValue() != 0) return shardResult;
+            result = shardResult;
+        }
+        return Objects.requireNonNull(result);
+    }
+
+    private void runWorkerShards(Execution execution, List<List<String>> shards, ExecResult[] results, ToolMetrics.Recorder recorder) throws IOException {
+        var queue = this.workQueue(execution);
+        var runs = new ArrayList<WorkerRun>(shards.size());
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                var shardLog = this.shardLog(i);
+                var runLog = new ToolLog(shardLog, this.getLogFormat().get(), false, 0);
+                runs.add(this.submit(queue, execution, shards.get(i), shardLog.getParent().toFile(), runLog, recorder.split()));
+            }
+
+            // every shard is submitted before waiting, so that the worker API can run them at the same time
+            queue.await();
+
+            for (int i = 0; i < runs.size(); i++) {
+                results[i] = this.replay(execution, runs.get(i));
+            }
+        } finally {
+            IOException failure = null;
+            for (var run : runs) {
+                try {
+                    run.log().close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                    else failure.addSuppressed(e);
+                }
+            }
+
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    private Path shardLog(int index) throws IOException {
+        var shardDir = new File(this.getTemporaryDir(), "shard-" + index).toPath();
+        Files.createDirectories(shardDir);
+        return shardDir.resolve("log.txt");
+    }
+
+    private static boolean isWorker(Tool.ExecutionMode executionMode) {
+        return executionMode == Tool.ExecutionMode.CLASSLOADER_ISOLATION || executionMode == Tool.ExecutionMode.PROCESS_ISOLATION;
+    }
+
+    private WorkQueue workQueue(Execution execution) {
+        return execution.executionMode() == Tool.ExecutionMode.PROCESS_ISOLATION
+            ? getWorkerExecutor().processIsolation(spec -> {
+                spec.getClasspath().from(this.getClasspath());
+                spec.forkOptions(options -> {
+                    options.setExecutable(execution.executable());
+                    options.setJvmArgs(execution.jvmArgs());
+                });
+            })
+            : getWorkerExecutor().classLoaderIsolation(spec -> spec.getClasspath().from(this.getClasspath()));
+    }
+
+    /// Submits a run of the tool to the worker API. Its output is only written to the log once it is
+    /// [replayed][#replay(Execution, WorkerRun)], after the queue has been awaited.
+    ///
+    /// @param queue     The queue to submit to
+    /// @param execution The execution, shared by all runs of the task
+    /// @param args      The arguments to the tool
+    /// @param tempDir   The directory for temporary files of this run
+    /// @param log       The log of this run
+    /// @param recorder  The metrics recorder of this run
+    /// @return The submitted run
+    private WorkerRun submit(WorkQueue queue, Execution execution, List<String> args, File tempDir, ToolLog log, ToolMetrics.Recorder recorder) {
+        var executionMode = execution.executionMode();
+        log.header("Java Launcher: " + (executionMode == Tool.ExecutionMode.PROCESS_ISOLATION ? execution.executable() : "GRADLE DAEMON"));
+        log.header("Execution mode: " + executionMode);
+        log.header("Main class: " + this.getMainClass().getOrElse("AUTOMATIC"));
+        logArgs(log, "Arguments: ", args);
+        if (executionMode == Tool.ExecutionMode.PROCESS_ISOLATION)
+            logArgs(log, "JVM Arguments: ", execution.jvmArgs());
+        logClasspath(log);
+
+        var outputFile = new File(tempDir, "output.txt");
+        recorder.spawned();
+        queue.submit(ToolWorkAction.class, parameters -> {
+            parameters.getMainClass().set(this.getMainClass());
+            parameters.getMainJar().fileValue(this.getClasspath().getFiles().stream().findFirst().orElse(null));
+            parameters.getArgs().set(args);
+            // the fork properties are copied from the daemon, so tools running in it already have them
+            parameters.getSystemProperties().set(executionMode == Tool.ExecutionMode.PROCESS_ISOLATION ? this.systemProperties : Map.of());
+            parameters.getOutputFile().set(outputFile);
+        });
+        return new WorkerRun(outputFile, log, recorder);
+    }
+
+    private ExecResult replay(Execution execution, WorkerRun run) throws IOException {
+        var logger = getLogger();
+        var log = run.log();
+        var recorder = run.recorder();
+        var exitValue = ToolWorkAction.replay(run.outputFile(), line -> {
+            recorder.replayed(line, false);
+            logger.log(execution.stdOutLevel(), line);
+            log.out(line);
+        }, line -> {
+            recorder.replayed(line, true);
+            logger.log(execution.stdErrLevel(), line);
+            log.err(line);
+        }, recorder::cpuTime);
+        return this.record(recorder, execution.executionMode(), new InProcessExecResult(exitValue));
+    }
+
+    /// Runs the tool once.
+    ///
+    /// @param execution The execution, shared by all runs of the task
+    /// @param args      The arguments to the tool
+    /// @param tempDir   The directory for temporary files of this run
+    /// @param log       The log of this run
+    /// @param recorder  The metrics recorder of this run
+    /// @return The result of the run
+    @SuppressWarnings("try") // the CPU time is only sampled while the tool runs
+    private ExecResult run(Execution execution, List<String> args, File tempDir, ToolLog log, ToolMetrics.Recorder recorder) throws IOException {
+        var javaLauncher = execution.javaLauncher();
+        var executable = execution.executable();
+        var workingDirectory = execution.workingDirectory();
+        var executionMode = execution.executionMode();
+        var jvmArgs = execution.jvmArgs();
+        var stdOutLevel = execution.stdOutLevel();
+        var stdErrLevel = execution.stdErrLevel();
+        var collectMetrics = execution.collectMetrics();
+        var logger = getLogger();
+
+        Consumer<String> stdOutLog = line -> {
+            logger.log(stdOutLevel, line);
+            log.out(line);
+        };
+        Consumer<String> stdErrLog = line -> {
+            logger.log(stdErrLevel, line);
+            log.err(line);
+        };
+
+        if (isWorker(executionMode)) {
+            var queue = this.workQueue(execution);
+            var work = this.submit(queue, execution, args, tempDir, log, recorder);
+            queue.await();
+            return this.replay(execution, work);
+        }
+
+        var stdOut = recorder.meter(SharedUtil.toLog(stdOutLog, Charset.defaultCharset()), false);
+        var stdErr = recorder.meter(SharedUtil.toLog(stdErrLog, Charset.defaultCharset()), true);
+
+        if (executionMode == Tool.ExecutionMode.POOLED || executionMode == Tool.ExecutionMode.BATCHED) {
+            var classpath = new ArrayList<String>();
+            for (var f : getClasspath()) {
+                classpath.add(f.getAbsolutePath());
+            }
+
+            // batched executions run at the same time, so they can only share a worker if their properties match
+            var key = executionMode == Tool.ExecutionMode.BATCHED
+                ? new ToolWorkerPool.Key(executable, classpath, jvmArgs, Map.copyOf(this.systemProperties), this.getBatchThreads().get())
+                : new ToolWorkerPool.Key(executable, classpath, jvmArgs);
+
+            log.header("Java Launcher: " + executable);
+            log.header("Execution mode: " + executionMode);
+            log.header("Main class: " + this.getMainClass().getOrElse("AUTOMATIC"));
+            logArgs(log, "Arguments: ", args);
+            logArgs(log, "JVM Arguments: ", jvmArgs);
+            logClasspath(log);
+
+            try (stdOut; stdErr) {
+                recorder.spawned();
+                var exitValue = ToolWorkerPool.run(
+                    key,
+                    this.getMainClass().getOrNull(),
+                    args,
+                    this.systemProperties,
+                    stdOut,
+                    stdErr,
+                    this.getMaxWorkerRuns().get(),
+                    recorder::cpuTime
+                );
+                return this.record(recorder, executionMode, new InProcessExecResult(exitValue));
+            }
+        }
+
+        var jvmSizing = this.getAdaptiveJvmArgs().get()
+            ? ToolJvmSizing.load(this.defaultToolDir.get().getAsFile().toPath(), tempDir.toPath(), javaLauncher)
+            : null;
+        var sizingArgs = jvmSizing != null
+            ? jvmSizing.jvmArgs(jvmArgs, ToolJvmSizing.Bounds.parse(this.getMinHeapSize().getOrNull(), this.getMaxHeapSize().getOrNull()), this.maxWorkers)
+            : List.<String>of();
+
+        var allJvmArgs = new ArrayList<>(sizingArgs);
+        allJvmArgs.addAll(jvmArgs);
+        // the archive depends on the heap layout, including the one chosen by sizing
+        var classDataSharing = this.getClassDataSharing().get()
+            ? ToolClassDataSharing.of(this.defaultToolDir.dir("cds").get().getAsFile(), javaLauncher, this.getClasspath(), allJvmArgs)
+            : null;
+        if (classDataSharing != null)
+            allJvmArgs.addAll(classDataSharing.jvmArgs());
+        var expectedMemory = ToolForkPermits.expectedMemory(allJvmArgs, this.getExpectedHeapSize().getOrNull());
+
+        var argumentFile = ToolArgumentFile.isNeeded(javaLauncher.getMetadata().getLanguageVersion().asInt(), this.getArgumentFileThreshold().get(), allJvmArgs, args, List.of(this.getClasspath().getAsPath()))
+            ? new File(tempDir, "args.txt")
+            : null;
+
+        var deadline = this.getDeadline().getOrNull();
+        var inactivityTimeout = this.getInactivityTimeout().getOrNull();
+        var watched = ToolWatchdog.isNeeded(deadline, inactivityTimeout);
+        var threadDump = new File(tempDir, "thread-dump.txt");
+        Files.deleteIfExists(threadDump.toPath());
+
+        // forked tools are found among the daemon's child processes by a unique system property
+        var invocationId = collectMetrics || watched ? ToolMetrics.Recorder.newInvocationId() : null;
+        try (stdOut; stdErr;
+             var permit = this.forkPermits.get().acquire(this.toolName, expectedMemory, this.getMaxConcurrency().getOrElse(0));
+             var cpuSampling = collectMetrics ? recorder.sampleCpuTime(invocationId) : null;
+             var watchdog = watched ? new ToolWatchdog(this.toolName, invocationId, deadline, inactivityTimeout, javaLauncher.getMetadata().getInstallationPath().getAsFile(), threadDump, log) : null) {
+            recorder.permitted(permit);
+            recorder.spawned();
+            var toolOut = watchdog != null ? watchdog.watch(stdOut) : stdOut;
+            var toolErr = watchdog != null ? watchdog.watch(stdErr) : stdErr;
+            var start = System.nanoTime();
+            var result = argumentFile != null ? this.execArgumentFile(argumentFile, workingDirectory, executable, allJvmArgs, args, invocationId, toolOut, toolErr, log) : getExecOperations().javaexec(spec -> {
                 spec.setIgnoreExitValue(true);
 
                 spec.setWorkingDir(workingDirectory);
                 spec.setClasspath(this.getClasspath());
                 if (this.getMainClass().isPresent())
                     spec.getMainClass().set(this.getMainClass());
-                spec.setExecutable(javaLauncher.getExecutablePath().getAsFile().getAbsolutePath());
+                spec.setExecutable(executable);
                 spec.setArgs(args);
-                spec.setJvmArgs(jvmArgs);
+                // explicit JVM arguments come last, so that they take precedence
+                spec.setJvmArgs(sizingArgs);
+                spec.jvmArgs(jvmArgs);
+                if (classDataSharing != null)
+                    spec.jvmArgs(classDataSharing.jvmArgs());
                 spec.setEnvironment(this.environment);
                 spec.setSystemProperties(this.systemProperties);
+                if (invocationId != null)
+                    spec.systemProperty(ToolMetrics.INVOCATION_PROPERTY, invocationId);
 
-                spec.setStandardOutput(SharedUtil.toLog(
-                    line -> {
-                        logger.log(stdOutLevel, line);
-                        log.println(line);
-                    }
-                ));
-                spec.setErrorOutput(SharedUtil.toLog(
-                    line -> {
-                        logger.log(stdErrLevel, line);
-                        log.println(line);
-                    }
-                ));
-
-                log.print("Java Launcher: ");
-                log.println(spec.getExecutable());
-                log.print("Working directory: ");
-                log.println(spec.getWorkingDir().getAbsolutePath());
-                log.print("Main class: ");
-                log.println(spec.getMainClass().getOrElse("AUTOMATIC"));
+                spec.setStandardOutput(toolOut);
+                spec.setErrorOutput(toolErr);
+
+                log.header("Java Launcher: " + spec.getExecutable());
+                log.header("Working directory: " + spec.getWorkingDir().getAbsolutePath());
+                log.header("Main class: " + spec.getMainClass().getOrElse("AUTOMATIC"));
                 logArgs(log, "Arguments: ", spec.getArgs());
                 logArgs(log, "JVM Arguments: ", spec.getAllJvmArgs());
-                log.println("Classpath:");
-                for (var f : getClasspath()) {
-                    log.print("  ");
-                    log.println(f.getAbsolutePath());
-                }
-                log.println("====================================");
+                logClasspath(log);
             });
+
+            var hung = watchdog != null ? watchdog.reason() : null;
+            if (hung != null) {
+                this.record(recorder, executionMode, result);
+                // without jcmd, the thread dump is only in the tool's output
+                var dumpLocation = threadDump.exists() ? threadDump : log.file().toFile();
+                throw this.problems.toolHung(new ProcessExecutionException("Tool " + this.toolName + " was stopped, as " + hung), this.toolName, this.getPath(), hung, dumpLocation);
+            }
+
+            if (classDataSharing != null)
+                classDataSharing.complete(result.getExitValue());
+            if (jvmSizing != null)
+                jvmSizing.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), result.getExitValue());
+
+            return this.record(recorder, executionMode, result);
+        }
+    }
+
+    private ExecResult execArgumentFile(File argumentFile, File workingDirectory, String executable, List<String> jvmArgs, List<String> args, @Nullable String invocationId, OutputStream stdOut, OutputStream stdErr, ToolLog log) throws IOException {
+        ToolArgumentFile.write(argumentFile.toPath(), jvmArgs, this.systemProperties, this.getClasspath(), this.getMainClass().getOrNull(), args);
+
+        log.header("Java Launcher: " + executable);
+        log.header("Working directory: " + workingDirectory.getAbsolutePath());
+        log.header("Main class: " + this.getMainClass().getOrElse("AUTOMATIC"));
+        log.header("Argument file: " + argumentFile.getAbsolutePath());
+        logArgs(log, "Arguments: ", args);
+        logArgs(log, "JVM Arguments: ", jvmArgs);
+        logClasspath(log);
+
+        return getExecOperations().exec(spec -> {
+            spec.setIgnoreExitValue(true);
+
+            spec.setWorkingDir(workingDirectory);
+            spec.setExecutable(executable);
+            // kept out of the argument file, so that it can be seen in the process's arguments
+            if (invocationId != null)
+                spec.args("-D" + ToolMetrics.INVOCATION_PROPERTY + '=' + invocationId);
+            spec.args('@' + argumentFile.getAbsolutePath());
+            spec.setEnvironment(this.environment);
+
+            spec.setStandardOutput(stdOut);
+            spec.setErrorOutput(stdErr);
+        });
+    }
+
+    private ExecResult record(ToolMetrics.Recorder recorder, Tool.ExecutionMode executionMode, ExecResult result) {
+        if (this.getCollectMetrics().get() && this.metrics.isPresent())
+            this.metrics.get().record(recorder.finish(this.getPath(), this.toolName, executionMode, result.getExitValue()));
+
+        return result;
+    }
+
+    private void logClasspath(ToolLog log) {
+        log.header("Classpath:");
+        for (var f : getClasspath()) {
+            log.header("  " + f.getAbsolutePath());
         }
+        log.header("====================================");
     }
 
-    private static void logArgs(PrintWriter log, String prefix, List<String> args) {
+    /// What a task runs its tool with, which stays the same for all of its [shards][#shards(Iterable, Function)].
+    ///
+    /// @param javaLauncher     The Java launcher
+    /// @param executable       The Java executable
+    /// @param workingDirectory The working directory
+    /// @param executionMode    How the tool is executed
+    /// @param jvmArgs          The JVM arguments
+    /// @param stdOutLevel      The log level of the tool's standard output
+    /// @param stdErrLevel      The log level of the tool's standard error
+    /// @param collectMetrics   If metrics are collected
+    private record Execution(JavaLauncher javaLauncher, String executable, File workingDirectory, Tool.ExecutionMode executionMode, List<String> jvmArgs, LogLevel stdOutLevel, LogLevel stdErrLevel, boolean collectMetrics) { }
+
+    /// A run of the tool that was submitted to the worker API.
+    ///
+    /// @param outputFile The file the worker writes the tool's output to
+    /// @param log        The log of the run
+    /// @param recorder   The metrics recorder of the run
+    private record WorkerRun(File outputFile, ToolLog log, ToolMetrics.Recorder recorder) { }
+
+    /// The inputs a task runs its tool on in shards.
+    ///
+    /// @param inputs The inputs
+    /// @param args   The arguments for each input
+    private record Sharding(Iterable<? extends File> inputs, Function<? super File, ? extends Iterable<?>> args) { }
+
+    /// Files to add to the arguments, each preceded by the same flag. The files are only iterated when the tool runs.
+    ///
+    /// @param arg   The flag that precedes each file
+    /// @param files The files
+    private record FileArgument(String arg, Iterable<? extends File> files) { }
+
+    /// The result of a tool executed by a worker instead of being forked.
+    ///
+    /// @param exitValue The exit value of the tool
+    private record InProcessExecResult(int exitValue) implements ExecResult {
+        @Override
+        public int getExitValue() {
+            return this.exitValue;
+        }
+
+        @Override
+        public ExecResult assertNormalExitValue() {
+            if (this.exitValue != 0)
+                throw new ProcessExecutionException("Tool finished with non-zero exit value (" + this.exitValue + ")");
+
+            return this;
+        }
+
+        @Override
+        public ExecResult rethrowFailure() {
+            return this;
+        }
+    }
+
+    private static void logArgs(ToolLog log, String prefix, List<String> args) {
         var padding = " ".repeat(prefix.length());
         for (int x = 0; x < args.size(); x++) {
-            log.print(x == 0 ? prefix : padding);
-            var current = args.get(x);
+            var line = (x == 0 ? prefix : padding) + args.get(x);
             var next = args.size() > x + 1 ? args.get(x + 1) : null;
-            var line = current;
-            if (current.startsWith("--") && next != null && !next.startsWith("--")) {
+            if (args.get(x).startsWith("--") && next != null && !next.startsWith("--")) {
                 x++;
                 line += ' ' + next;
             }
-            log.println(line);
+            log.header(line);
         }
     }
 
@@ -333,11 +1084,41 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
     /// Adds each file to the arguments preceded by the given argument. Designed to work well with
     /// <a href="https://jopt-simple.github.io/jopt-simple/">JOpt Simple</a>.
     ///
+    /// The files are not iterated until the tool runs, so a [FileCollection] stays lazy, and no provider is created
+    /// for each file. This makes it suitable for passing thousands of files, such as libraries, especially together
+    /// with an [argument file][#getArgumentFileThreshold()].
+    ///
     /// @param arg   The flag to use for each file
     /// @param files The files to add
+    @SuppressWarnings("DataFlowIssue")
     protected final void args(String arg, Iterable<? extends File> files) {
-        for (File file : files)
-            this.args(arg, file);
+        try {
+            this.args.add(new FileArgument(arg, files));
+        } catch (NullPointerException e) {
+            throw new IllegalStateException("ToolExecBase#args can only be called inside of #addArguments()", e);
+        }
+    }
+
+    /// Runs the tool in shards of the given inputs instead of once, with the arguments of each input in the shard added
+    /// after all other arguments. This is meant for tools that take one input at a time, such as remapping a single
+    /// jar, so that a task with many inputs can run the tool for several of them at once.
+    ///
+    /// The inputs are split into shards of [#getShardSize()] inputs, of which up to [#getShardParallelism()] run at
+    /// the same time. Each shard has its own log, and the logs are merged into the task's log in the order of the
+    /// shards once all of them have finished. If a shard fails, the shards that have not yet started are skipped, and
+    /// the task fails with the result of the first failed shard.
+    ///
+    /// With the [class loader][Tool.ExecutionMode#CLASSLOADER_ISOLATION] and
+    /// [process][Tool.ExecutionMode#PROCESS_ISOLATION] isolation modes, all shards are instead submitted to the worker
+    /// API at once, which runs them within the limit of `--max-workers`. Every shard is then run, even if one fails.
+    ///
+    /// @param inputs The inputs to shard
+    /// @param args   The arguments for each input, which may be [providers][Provider]
+    protected final void shards(Iterable<? extends File> inputs, Function<? super File, ? extends Iterable<?>> args) {
+        if (this.args == null)
+            throw new IllegalStateException("ToolExecBase#shards can only be called inside of #addArguments()");
+
+        this.sharding = new Sharding(inputs, args);
     }
 
     /// Adds the given argument followed by the given file location to the arguments.
@@ -367,6 +1148,83 @@ public abstract class ToolExecBase<P extends EnhancedProblems> extends DefaultTa
         }
     }
 
+    /// Declares the given file as an input of this task, and adds it to the arguments preceded by the given argument
+    /// when the tool is executed.
+    ///
+    /// Unlike [#args(String, Provider)], which is called when the task executes, this is called when the task is
+    /// configured. The file is tracked with the given path sensitivity, so its absolute path is not part of the task's
+    /// [build cache][#getCacheable()] key. Nothing is added if the file is absent.
+    ///
+    /// @param arg         The flag to use
+    /// @param file        The file to add
+    /// @param sensitivity The path sensitivity of the file
+    protected final void inputFile(String arg, Provider<? extends FileSystemLocation> file, PathSensitivity sensitivity) {
+        this.inputFiles(arg, this.getObjects().fileCollection().from(file), sensitivity);
+    }
+
+    /// Declares the given files as inputs of this task, and adds each of them to the arguments preceded by the given
+    /// argument when the tool is executed.
+    ///
+    /// @param arg         The flag to use for each file
+    /// @param files       The files to add
+    /// @param sensitivity The path sensitivity of the files
+    /// @see #inputFile(String, Provider, PathSensitivity)
+    protected final void inputFiles(String arg, FileCollection files, PathSensitivity sensitivity) {
+        this.getInputs().files(files)
+            .withPropertyName(this.nextFileArgName())
+            .withPathSensitivity(sensitivity)
+            .optional();
+        this.fileArgs.add(new FileArgument(arg, files));
+    }
+
+    /// Declares the given file as an output of this task, and adds it to the arguments preceded by the given argument
+    /// when the tool is executed. Its parent directory is created by Gradle before the task executes.
+    ///
+    /// @param arg  The flag to use
+    /// @param file The file to add
+    /// @see #inputFile(String, Provider, PathSensitivity)
+    protected final void outputFile(String arg, Provider<? extends RegularFile> file) {
+        this.getOutputs().file(file).withPropertyName(this.nextFileArgName());
+        this.fileArgs.add(new FileArgument(arg, this.getObjects().fileCollection().from(file)));
+    }
+
+    /// Declares the given directory as an output of this task, and adds it to the arguments preceded by the given
+    /// argument when the tool is executed. The directory is created by Gradle before the task executes.
+    ///
+    /// @param arg       The flag to use
+    /// @param directory The directory to add
+    /// @see #inputFile(String, Provider, PathSensitivity)
+    protected final void outputDirectory(String arg, Provider<? extends Directory> directory) {
+        this.getOutputs().dir(directory).withPropertyName(this.nextFileArgName());
+        this.fileArgs.add(new FileArgument(arg, this.getObjects().fileCollection().from(directory)));
+    }
+
+    /// Declares the given files as the incremental inputs of this task, which are given to the tool after all other
+    /// arguments. If the task is [incremental][#getIncremental()], only the files that changed since the last
+    /// successful run are given, preceded by `--added`, `--modified`, or `--removed`, as long as nothing else about
+    /// the run has changed and its outputs are as it left them. Otherwise, each input is given preceded by the given
+    /// argument.
+    ///
+    /// Changes are found for each file, so the inputs of an incremental run are always files, even if the given
+    /// collection contains directories. A task can only have one set of incremental inputs.
+    ///
+    /// @param arg         The flag to use for each input on a full run
+    /// @param files       The incremental inputs
+    /// @param sensitivity The path sensitivity of the inputs
+    protected final void incrementalInputFiles(String arg, FileCollection files, PathSensitivity sensitivity) {
+        if (this.incrementalInputs != null)
+            throw new IllegalStateException("ToolExecBase#incrementalInputFiles can only be called once");
+
+        this.getInputs().files(files)
+            .withPropertyName("incrementalInputs")
+            .withPathSensitivity(sensitivity);
+        this.incrementalInputs = new FileArgument(arg, files);
+    }
+
+    private String nextFileArgName() {
+        return "fileArgs." + this.fileArgs.size();
+    }
+
     /// Adds the given map of arguments.
     ///
     /// [#args(String, Provider)] will be invoked for each entry in the map. If the key and/or value are not of the
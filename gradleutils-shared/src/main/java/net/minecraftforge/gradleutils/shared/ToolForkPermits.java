@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Limits how many tools are [forked][Tool.ExecutionMode#FORK] at once by the memory they are expected to use, so that
+/// parallel builds on machines with many cores do not start more JVMs than fit in physical memory.
+///
+/// Every fork takes a [permit][#acquire(String, long, int)] for its expected memory before it starts, and waits while
+/// the permits already taken leave too little of the budget. A fork that alone is larger than the whole budget still
+/// runs, but only once no other fork is running. Each tool can also be limited to a maximum amount of concurrent forks.
+abstract class ToolForkPermits implements BuildService<ToolForkPermits.Parameters>, AutoCloseable {
+    private static final Logger LOGGER = Logging.getLogger(ToolForkPermits.class);
+
+    private static final long MIB = 1024 * 1024;
+
+    /// The heap a fork is expected to use if neither its JVM arguments nor its tool say otherwise.
+    static final long DEFAULT_HEAP = 512 * MIB;
+
+    /// The memory a JVM uses outside of its heap, such as for metaspace, code, and thread stacks.
+    static final long JVM_OVERHEAD = 64 * MIB;
+
+    interface Parameters extends BuildServiceParameters {
+        /// The memory, in bytes, that forked tools may use together. If absent, it is the physical memory minus the
+        /// maximum heap of the Gradle daemon.
+        ///
+        /// @return The property for the memory budget
+        Property<Long> getMaxMemory();
+    }
+
+    private final long budget;
+
+    // guarded by this
+    private long inUse;
+    private final Map<String, Integer> running = new HashMap<>();
+    private int forks;
+    private int waited;
+    private long waitTime;
+    private long peakInUse;
+    private int peakRunning;
+
+    @Inject
+    public ToolForkPermits() {
+        this.budget = this.getParameters().getMaxMemory().getOrElse(defaultBudget());
+    }
+
+    /// A permit to fork a tool, which must be closed once the tool has finished.
+    final class Permit implements Closeable {
+        private final String tool;
+        private final long memory;
+        private final long waitTime;
+        private boolean closed;
+
+        private Permit(String tool, long memory, long waitTime) {
+            this.tool = tool;
+            this.memory = memory;
+            this.waitTime = waitTime;
+        }
+
+        /// @return The memory reserved for the fork
+        long memory() {
+            return this.memory;
+        }
+
+        /// @return The time spent waiting for the permit, in nanoseconds
+        long waitTime() {
+            return this.waitTime;
+        }
+
+        @Override
+        public void close() {
+            synchronized (ToolForkPermits.this) {
+                if (this.closed) return;
+
+                this.closed = true;
+                ToolForkPermits.this.inUse -= this.memory;
+                ToolForkPermits.this.running.merge(this.tool, -1, Integer::sum);
+                ToolForkPermits.this.notifyAll();
+            }
+        }
+    }
+
+    /// Takes a permit to fork the given tool, waiting until enough memory is free and the tool is below its maximum
+    /// concurrency.
+    ///
+    /// @param tool           The name of the tool
+    /// @param memory         The memory the fork is expected to use
+    /// @param maxConcurrency The maximum amount of forks of the tool that may run at once, or `0` for no limit
+    /// @return The permit
+    /// @throws InterruptedIOException If the task was interrupted while waiting
+    synchronized Permit acquire(String tool, long memory, int maxConcurrency) throws InterruptedIOException {
+        // a fork larger than the budget runs alone instead of never
+        var reserved = Math.min(memory, this.budget);
+
+        var start = System.nanoTime();
+        var waiting = false;
+        while (this.inUse + reserved > this.budget || (maxConcurrency > 0 && this.running.getOrDefault(tool, 0) >= maxConcurrency)) {
+            if (!waiting) {
+                waiting = true;
+                LOGGER.info("Waiting for {} MiB of memory to fork {} ({} of {} MiB in use)", reserved / MIB, tool, this.inUse / MIB, this.budget / MIB);
+            }
+
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to fork " + tool);
+            }
+        }
+        var waitTime = System.nanoTime() - start;
+
+        this.inUse += reserved;
+        var running = this.running.merge(tool, 1, Integer::sum);
+        this.forks++;
+        if (waiting) {
+            this.waited++;
+            this.waitTime += waitTime;
+        }
+        this.peakInUse = Math.max(this.peakInUse, this.inUse);
+        this.peakRunning = Math.max(this.peakRunning, this.running.values().stream().mapToInt(Integer::intValue).sum());
+
+        LOGGER.debug("Forking {} with {} MiB reserved ({} running)", tool, reserved / MIB, running);
+        return new Permit(tool, reserved, waiting ? waitTime : 0);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.forks == 0) return;
+
+        LOGGER.info("Forked {} tools with up to {} at once, using up to {} of {} MiB. {} forks waited {} ms for memory.",
+            this.forks, this.peakRunning, this.peakInUse / MIB, this.budget / MIB, this.waited, this.waitTime / 1_000_000);
+    }
+
+    /// Gets the memory a fork with the given JVM arguments is expected to use.
+    ///
+    /// @param jvmArgs      The JVM arguments of the fork
+    /// @param expectedHeap The heap size the tool is expected to use, in the same format as `-Xmx`, or `null` to use
+    ///                     the maximum heap size in the JVM arguments
+    /// @return The expected memory, in bytes
+    static long expectedMemory(List<String> jvmArgs, @Nullable String expectedHeap) {
+        if (expectedHeap != null)
+            return ToolJvmSizing.parseSize(expectedHeap) + JVM_OVERHEAD;
+
+        // the last one wins, as it does in the JVM
+        for (int i = jvmArgs.size() - 1; i >= 0; i--) {
+            var arg = jvmArgs.get(i);
+            if (arg.startsWith("-Xmx"))
+                return ToolJvmSizing.parseSize(arg.substring("-Xmx".length())) + JVM_OVERHEAD;
+            if (arg.startsWith("-XX:MaxHeapSize="))
+                return ToolJvmSizing.parseSize(arg.substring("-XX:MaxHeapSize=".length())) + JVM_OVERHEAD;
+        }
+
+        return DEFAULT_HEAP + JVM_OVERHEAD;
+    }
+
+    private static long defaultBudget() {
+        var daemonHeap = Runtime.getRuntime().maxMemory();
+        var os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean sunOs)
+            return Math.max(DEFAULT_HEAP + JVM_OVERHEAD, sunOs.getTotalMemorySize() - daemonHeap);
+
+        // without the physical memory, assume there is room for as much as the daemon itself may use
+        return Math.max(DEFAULT_HEAP + JVM_OVERHEAD, daemonHeap);
+    }
+}
@@ -4,16 +4,18 @@
  */
 package net.minecraftforge.gradleutils.shared;
 
-import net.minecraftforge.util.download.DownloadUtils;
-import net.minecraftforge.util.hash.HashStore;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.dsl.RepositoryHandler;
+import org.gradle.api.artifacts.repositories.UrlArtifactRepository;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.Directory;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.provider.ProviderFactory;
@@ -25,95 +27,180 @@ import org.jetbrains.annotations.Nullable;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Serial;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 record ToolImpl(
     String getName,
     ModuleVersionIdentifier getModule,
     String artifact,
     String fileName,
-    String downloadUrl,
+    List<String> downloadUrls,
     int getJavaVersion,
     @Nullable String getMainClass,
-    String mavenUrl
+    List<String> mavenUrls
 ) implements ToolInternal {
-    private static final @Serial long serialVersionUID = -862411638019629688L;
+    private static final @Serial long serialVersionUID = 4122839150270379734L;
 
     private static final Logger LOGGER = Logging.getLogger(Tool.class);
 
     ToolImpl(String name, String artifact, String mavenUrl, int javaVersion, @Nullable String mainClass) {
-        this(name, SharedUtil.moduleOf(artifact), artifact, mavenUrl, javaVersion, mainClass);
+        this(name, artifact, List.of(mavenUrl), javaVersion, mainClass);
     }
 
-    ToolImpl(String name, SharedUtil.SimpleModuleVersionIdentifier module, String artifact, String mavenUrl, int javaVersion, @Nullable String mainClass) {
+    ToolImpl(String name, String artifact, List<String> mavenUrls, int javaVersion, @Nullable String mainClass) {
+        this(name, SharedUtil.moduleOf(artifact), artifact, mavenUrls, javaVersion, mainClass);
+    }
+
+    ToolImpl(String name, SharedUtil.SimpleModuleVersionIdentifier module, String artifact, List<String> mavenUrls, int javaVersion, @Nullable String mainClass) {
         this(
             name,
             module,
             artifact,
             module.getFileName(),
-            module.getDownloadUrl(mavenUrl),
+            downloadUrls(module, mavenUrls),
             javaVersion,
             mainClass,
-            mavenUrl
+            List.copyOf(mavenUrls)
         );
     }
 
-    private record Overrides(String downloadUrl, String fileName, String artifact){}
+    private static List<String> downloadUrls(SharedUtil.SimpleModuleVersionIdentifier module, List<String> mavenUrls) {
+        if (mavenUrls.isEmpty())
+            throw new IllegalArgumentException("Tool %s must have at least one Maven URL".formatted(module));
+
+        var downloadUrls = new ArrayList<String>(mavenUrls.size());
+        for (var mavenUrl : mavenUrls)
+            downloadUrls.add(module.getDownloadUrl(mavenUrl));
+        return List.copyOf(downloadUrls);
+    }
+
+    private record Overrides(List<String> downloadUrls, String fileName, String artifact){}
+
+    /// A tool to be downloaded.
+    ///
+    /// @param module The module of the tool
+    /// @param urls   The URLs to download the tool from, in order of preference
+    record Download(String module, List<String> urls) implements Serializable {
+        private static final @Serial long serialVersionUID = -3320563812309416152L;
+    }
 
     private Overrides fillOverrides(Tool.Definition definition) {
-        var downloadUrl = this.downloadUrl;
+        var downloadUrls = this.downloadUrls;
         var fileName = this.fileName;
         var artifact = this.artifact;
+        var mavenUrls = definition.getMavenUrls().getOrElse(List.of());
+        if (mavenUrls.isEmpty())
+            mavenUrls = this.mavenUrls;
 
         if (definition.getArtifact().isPresent()) {
             artifact = definition.getArtifact().get();
             var parsed = SharedUtil.moduleOf(artifact);
-            downloadUrl = parsed.getDownloadUrl(this.mavenUrl);
+            downloadUrls = downloadUrls(parsed, mavenUrls);
             fileName = parsed.getFileName();
         } else if (definition.getVersion().isPresent()) {
             var version = definition.getVersion().get();
             var parsed = SharedUtil.moduleOf(artifact).withVersion(version);
             artifact = parsed.toString();
-            downloadUrl = parsed.getDownloadUrl(this.mavenUrl);
+            downloadUrls = downloadUrls(parsed, mavenUrls);
             fileName = parsed.getFileName();
+        } else if (mavenUrls != this.mavenUrls) {
+            downloadUrls = downloadUrls(SharedUtil.moduleOf(artifact), mavenUrls);
         }
-        return new Overrides(downloadUrl, fileName, artifact);
+        return new Overrides(downloadUrls, fileName, artifact);
     }
 
     @Override
-    public Tool.Resolved get(Provider<? extends Directory> cachesDir, ProviderFactory providers, ToolsExtensionImpl toolsExt) {
+    public Tool.Resolved get(Provider<? extends Directory> cachesDir, Provider<? extends Directory> storeDir, ProviderFactory providers, ToolsExtensionImpl toolsExt) {
         var definition = toolsExt.definitions.maybeCreate(this.getName());
 
-        FileCollection classpathFromGradle = toolsExt.getObjects().fileCollection();
-        var classpathFromDownload = definition.getClasspath();
         var mainClass = definition.getMainClass().orElse(providers.provider(this::getMainClass)).getOrNull();
-        var module = this.getModule();
-
-        if (classpathFromDownload.isEmpty()) {
-            var overrides = fillOverrides(definition);
-            module = SharedUtil.moduleOf(overrides.artifact); // Update the module if needed
-
-            classpathFromGradle = toolsExt.getProject().getConfigurations().detachedConfiguration(
+        var javaLauncher = definition.getJavaLauncher().orElse(providers.provider(() -> SharedUtil.launcherForStrictly(toolsExt.getJavaToolchains(), this.getJavaVersion()).get()));
+
+        var classpathFromDefinition = definition.getClasspath();
+        if (!classpathFromDefinition.isEmpty())
+            return new ResolvedImpl(toolsExt.getObjects(), this.getName(), this.getModule(), toolsExt.getObjects().fileCollection(), null, toolsExt.resolutions, classpathFromDefinition, mainClass, javaLauncher);
+
+        var overrides = fillOverrides(definition);
+        var module = SharedUtil.moduleOf(overrides.artifact); // Update the module if needed
+        var inputFile = cachesDir.map(d -> d.file("tools/" + overrides.fileName));
+        var download = new Download(module.toString(), overrides.downloadUrls);
+
+        // a launcher set by the definition cannot be compared, so the resolved tool cannot be reused
+        var key = definition.getJavaLauncher().isPresent() ? null : new ResolvedKey(this, overrides, mainClass);
+        var existing = key != null ? toolsExt.resolved.get(key) : null;
+        if (existing != null) return existing;
+
+        // read when the tool is first resolved, so that repositories added after the task was created are included
+        Supplier<String> resolutionKey = () -> resolutionKey(overrides.artifact, mainClass != null, toolsExt.getProject().getRepositories());
+        Supplier<ResolvedImpl> resolver = () -> {
+            var classpathFromGradle = toolsExt.getProject().getConfigurations().detachedConfiguration(
                 toolsExt.getDependencies().create(overrides.artifact)
             ).setTransitive(mainClass != null);
-            classpathFromDownload = toolsExt.getObjects().fileCollection().from(
+            var classpathFromDownload = toolsExt.getObjects().fileCollection().from(
                 providers.of(Source.class, spec -> spec.parameters(parameters -> {
-                    parameters.getInputFile().set(cachesDir.map(d -> d.file("tools/" + overrides.fileName)));
-                    parameters.getDownloadUrl().set(overrides.downloadUrl);
+                    parameters.getInputFile().set(inputFile);
+                    parameters.getCachesDir().set(cachesDir);
+                    parameters.getModule().set(download.module());
+                    parameters.getDownloadUrls().set(download.urls());
+                    parameters.getStoreDir().set(storeDir);
+                    parameters.getRetries().set(toolsExt.getDownloadRetries());
+                    parameters.getRetryBackoff().set(toolsExt.getDownloadRetryBackoff());
+                    parameters.getConnections().set(toolsExt.getDownloadConnections());
+                    parameters.getOffline().set(toolsExt.isOffline());
                 }))
             );
-        }
 
-        return new ResolvedImpl(
-            toolsExt.getObjects(),
-            this.getName(),
-            module,
-            classpathFromGradle,
-            classpathFromDownload,
-            mainClass,
-            definition.getJavaLauncher().orElse(providers.provider(() -> SharedUtil.launcherForStrictly(toolsExt.getJavaToolchains(), this.getJavaVersion()).get()))
-        );
+            return new ResolvedImpl(toolsExt.getObjects(), this.getName(), module, classpathFromGradle, resolutionKey, toolsExt.resolutions, classpathFromDownload, mainClass, javaLauncher);
+        };
+
+        var resolved = resolver.get();
+        if (key != null)
+            toolsExt.resolved.put(key, resolved);
+
+        // register for prefetching, unless the tool is resolved through Gradle and would never use the download
+        toolsExt.downloads.putAll(providers.provider(() -> resolved.isDownloaded()
+            ? Map.of(inputFile.get().getAsFile().getAbsolutePath(), download)
+            : Map.of()
+        ));
+
+        return resolved;
+    }
+
+    /// The key that resolved tools are reused between the tasks of a project by.
+    ///
+    /// @param tool      The tool, including its Java version
+    /// @param overrides The artifact and download URLs, as overridden by the tool's definition
+    /// @param mainClass The main class, as overridden by the tool's definition
+    private record ResolvedKey(ToolImpl tool, Overrides overrides, @Nullable String mainClass) { }
+
+    /// The key that the decision of whether to resolve the tool through Gradle is cached by.
+    private static String resolutionKey(String artifact, boolean transitive, RepositoryHandler repositories) {
+        var key = new StringBuilder(artifact).append(transitive ? "|transitive" : "|intransitive");
+        for (var repository : repositories) {
+            key.append('|');
+            if (repository instanceof UrlArtifactRepository urlRepository)
+                key.append(urlRepository.getUrl());
+            else
+                key.append(repository.getName());
+        }
+        return key.toString();
     }
 
     static abstract class DefinitionImpl implements Definition {
@@ -123,6 +210,16 @@ record ToolImpl(
         private final Property<JavaLauncher> javaLauncher = this.getObjects().property(JavaLauncher.class);
         private final Property<String> version = this.getObjects().property(String.class);
         private final Property<String> artifact = this.getObjects().property(String.class);
+        private final ListProperty<String> mavenUrls = this.getObjects().listProperty(String.class);
+        private final Property<ExecutionMode> executionMode = this.getObjects().property(ExecutionMode.class);
+        private final Property<Boolean> adaptiveJvmArgs = this.getObjects().property(Boolean.class);
+        private final Property<String> minHeapSize = this.getObjects().property(String.class);
+        private final Property<String> maxHeapSize = this.getObjects().property(String.class);
+        private final Property<String> expectedHeapSize = this.getObjects().property(String.class);
+        private final Property<Integer> maxConcurrency = this.getObjects().property(Integer.class);
+        private final Property<Boolean> incremental = this.getObjects().property(Boolean.class);
+        private final Property<Duration> deadline = this.getObjects().property(Duration.class);
+        private final Property<Duration> inactivityTimeout = this.getObjects().property(Duration.class);
 
         protected abstract @Inject ObjectFactory getObjects();
 
@@ -160,23 +257,80 @@ record ToolImpl(
         public Property<String> getArtifact() {
             return this.artifact;
         }
+
+        @Override
+        public ListProperty<String> getMavenUrls() {
+            return this.mavenUrls;
+        }
+
+        @Override
+        public Property<ExecutionMode> getExecutionMode() {
+            return this.executionMode;
+        }
+
+        @Override
+        public Property<Boolean> getAdaptiveJvmArgs() {
+            return this.adaptiveJvmArgs;
+        }
+
+        @Override
+        public Property<String> getMinHeapSize() {
+            return this.minHeapSize;
+        }
+
+        @Override
+        public Property<String> getMaxHeapSize() {
+            return this.maxHeapSize;
+        }
+
+        @Override
+        public Property<String> getExpectedHeapSize() {
+            return this.expectedHeapSize;
+        }
+
+        @Override
+        public Property<Integer> getMaxConcurrency() {
+            return this.maxConcurrency;
+        }
+
+        @Override
+        public Property<Boolean> getIncremental() {
+            return this.incremental;
+        }
+
+        @Override
+        public Property<Duration> getDeadline() {
+            return this.deadline;
+        }
+
+        @Override
+        public Property<Duration> getInactivityTimeout() {
+            return this.inactivityTimeout;
+        }
     }
 
     @SuppressWarnings("serial")
     static final class ResolvedImpl implements ToolInternal.Resolved {
         private final String name;
         private final ModuleVersionIdentifier module;
+        private final ObjectFactory objects;
         private final FileCollection classpathFromGradle;
+        private final @Nullable Supplier<String> resolutionKey;
+        private final Provider<ToolResolutions> resolutions;
         private final FileCollection classpathFromDownload;
         private final @Nullable String mainClass;
         private final Property<JavaLauncher> javaLauncher;
 
-        private @Nullable Boolean useGradle = null;
+        private @Nullable FileCollection classpath = null;
+        private ToolResolutions.@Nullable Decision decision = null;
 
-        private ResolvedImpl(ObjectFactory objects, String name, ModuleVersionIdentifier module, FileCollection classpathFromGradle, FileCollection classpathFromDownload, @Nullable String mainClass, Provider<? extends JavaLauncher> javaLauncher) {
+        private ResolvedImpl(ObjectFactory objects, String name, ModuleVersionIdentifier module, FileCollection classpathFromGradle, @Nullable Supplier<String> resolutionKey, Provider<ToolResolutions> resolutions, FileCollection classpathFromDownload, @Nullable String mainClass, Provider<? extends JavaLauncher> javaLauncher) {
+            this.objects = objects;
             this.name = name;
             this.module = module;
             this.classpathFromGradle = classpathFromGradle;
+            this.resolutionKey = resolutionKey;
+            this.resolutions = resolutions;
             this.classpathFromDownload = classpathFromDownload;
             this.mainClass = mainClass;
             this.javaLauncher = objects.property(JavaLauncher.class).value(javaLauncher);
@@ -184,15 +338,33 @@ record ToolImpl(
 
         @Override
         public FileCollection getClasspath() {
-            if (useGradle == null) {
-                try {
-                    useGradle = !classpathFromGradle.getFiles().isEmpty();
-                } catch (Exception e) {
-                    useGradle = false;
-                }
-            }
+            if (this.classpath != null) return this.classpath;
+
+            // the tool's classpath is overridden by its definition, so there is nothing to resolve
+            if (this.resolutionKey == null)
+                return this.classpath = this.classpathFromDownload;
+
+            var decision = this.decision(this.resolutionKey);
+            return this.classpath = decision.useGradle()
+                ? this.objects.fileCollection().from(decision.files())
+                : this.classpathFromDownload;
+        }
 
-            return useGradle ? classpathFromGradle : classpathFromDownload;
+        /// Checks if the tool's classpath is downloaded directly, rather than resolved through Gradle or given by its
+        /// definition. This resolves the tool through Gradle if that has not been decided yet.
+        ///
+        /// @return If the tool is downloaded
+        boolean isDownloaded() {
+            return this.resolutionKey != null && !this.decision(this.resolutionKey).useGradle();
+        }
+
+        private ToolResolutions.Decision decision(Supplier<String> resolutionKey) {
+            if (this.decision != null) return this.decision;
+
+            // only the decision and its files are shared with other projects, the configuration stays in this one
+            return this.decision = this.resolutions.isPresent()
+                ? this.resolutions.get().decide(resolutionKey.get(), ToolResolutions.isChanging(this.module.getVersion()), this.classpathFromGradle::getFiles)
+                : ToolResolutions.decide(this.classpathFromGradle::getFiles);
         }
 
         @Override
@@ -225,7 +397,46 @@ record ToolImpl(
         interface Parameters extends ValueSourceParameters {
             RegularFileProperty getInputFile();
 
-            Property<String> getDownloadUrl();
+            /// The plugin's global caches directory, which holds the [index][ToolIndex] of cached tools.
+            ///
+            /// @return The property for the global caches directory
+            DirectoryProperty getCachesDir();
+
+            /// The module of the tool, recorded in the index. If absent, the tool was not downloaded from a Maven
+            /// repository.
+            ///
+            /// @return The property for the module
+            Property<String> getModule();
+
+            /// The URLs to download the tool from, in order of preference.
+            ///
+            /// @return The property for the download URLs
+            ListProperty<String> getDownloadUrls();
+
+            /// The [content-addressed store][ToolStore] shared between plugins. If absent, the tool is not stored.
+            ///
+            /// @return The property for the store directory
+            DirectoryProperty getStoreDir();
+
+            /// The amount of times to retry a failed download.
+            ///
+            /// @return The property for the retries
+            Property<Integer> getRetries();
+
+            /// The time to wait before the first retry of a failed download, doubled for each following retry.
+            ///
+            /// @return The property for the retry backoff
+            Property<Duration> getRetryBackoff();
+
+            /// The maximum amount of connections to download a large tool over.
+            ///
+            /// @return The property for the connections
+            Property<Integer> getConnections();
+
+            /// If Gradle is running in offline mode, in which case the tool can only be used if it is already cached.
+            ///
+            /// @return The property for offline mode
+            Property<Boolean> getOffline();
         }
 
         @Inject
@@ -234,38 +445,164 @@ record ToolImpl(
         @Override
         public File obtain() {
             var parameters = this.getParameters();
+            return download(
+                parameters.getInputFile().get().getAsFile(),
+                new Download(parameters.getModule().getOrElse(""), parameters.getDownloadUrls().get()),
+                ToolIndex.of(parameters.getCachesDir().get().getAsFile().toPath()),
+                parameters.getStoreDir().isPresent() ? new ToolStore(parameters.getStoreDir().get().getAsFile().toPath()) : null,
+                new ToolDownloader.Options(
+                    parameters.getRetries().getOrElse(ToolDownloader.Options.DEFAULT.retries()),
+                    parameters.getRetryBackoff().getOrElse(ToolDownloader.Options.DEFAULT.backoff()),
+                    parameters.getConnections().getOrElse(ToolDownloader.Options.DEFAULT.connections()),
+                    parameters.getOffline().getOrElse(false)
+                )
+            );
+        }
+
+        /// The downloads currently in progress in this JVM, so that concurrent requests for the same tool share a
+        /// single transfer.
+        private static final ConcurrentMap<File, CompletableFuture<File>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+        /// Downloads the given tool, or does nothing if it is already downloaded and up-to-date.
+        ///
+        /// If a store is given, the tool is linked from it if any plugin has already downloaded it. Otherwise, the tool
+        /// is downloaded, verified against its Maven checksum (if published), and added to the store.
+        ///
+        /// Only one transfer happens per tool file at a time. Within this JVM, concurrent callers wait on and reuse
+        /// the result of the first caller. Between processes sharing the same Gradle user home, the transfer is
+        /// guarded by a file lock next to the tool file. The tool is always downloaded to a temporary file first,
+        /// which is then atomically moved into place, so a partially written tool is never visible.
+        ///
+        /// Whether the tool is up-to-date is checked against the plugin's [index][ToolIndex], which also records the
+        /// tool once it has been downloaded.
+        ///
+        /// @param outFile  The file to download the tool to
+        /// @param download The tool to download
+        /// @param index    The index of the plugin's cached tools
+        /// @param store    The store to share the tool with other plugins, or `null` to not use it
+        /// @param options  The options for downloading the tool
+        /// @return The tool file
+        static File download(File outFile, Download download, ToolIndex index, @Nullable ToolStore store, ToolDownloader.Options options) {
+            if (index.isValid(outFile.toPath(), download.urls().get(0))) {
+                LOGGER.info("Default tool already downloaded: {}", outFile.getName());
+                return outFile;
+            }
+
+            var future = new CompletableFuture<File>();
+            var inFlight = IN_FLIGHT.putIfAbsent(outFile.getAbsoluteFile(), future);
+            if (inFlight != null) {
+                LOGGER.info("Waiting for default tool to be downloaded: {}", outFile.getName());
+                try {
+                    return inFlight.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException rte ? rte : e;
+                }
+            }
 
-            // inputs
-            var downloadUrl = parameters.getDownloadUrl().get();
+            try {
+                future.complete(downloadLocked(outFile, download, index, store, options));
+                return outFile;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                IN_FLIGHT.remove(outFile.getAbsoluteFile(), future);
+            }
+        }
 
-            // outputs
-            var outFile = parameters.getInputFile().get().getAsFile();
+        @SuppressWarnings("try") // the lock only needs to be held while downloading
+        private static File downloadLocked(File outFile, Download download, ToolIndex index, @Nullable ToolStore store, ToolDownloader.Options options) {
             var name = outFile.getName();
+            var downloadUrls = download.urls();
+            var downloadUrl = downloadUrls.get(0);
+            var lockFile = new File(outFile.getParentFile(), name + ".lock").toPath();
+            try {
+                Files.createDirectories(lockFile.getParent());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to download default tool: " + name, e);
+            }
 
-            // in-house caching
-            var cache = HashStore.fromFile(outFile).add("url", downloadUrl);
+            try (var channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 var lock = lock(channel, name)) {
+                // Another process may have downloaded it while we waited for the lock
+                if (index.isValid(outFile.toPath(), downloadUrl)) {
+                    LOGGER.info("Default tool already downloaded: {}", name);
+                    return outFile;
+                }
 
-            if (outFile.exists() && cache.isSame()) {
-                LOGGER.info("Default tool already downloaded: {}", name);
-            } else {
-                try {
-                    LOGGER.info("Deleting out-of-date tool: {}", name);
-                    Files.deleteIfExists(outFile.toPath());
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to delete out-of-date tool: " + name);
+                var partFile = new File(outFile.getParentFile(), name + ".part");
+                String sha256;
+                if (store != null) {
+                    // a missing sidecar is a null checksum, so track the lookup separately to not repeat it
+                    ToolStore.Checksum checksum = null;
+                    boolean fetched = false;
+                    var stored = store.findByUrl(downloadUrl);
+                    if (stored == null && !options.offline()) {
+                        checksum = ToolStore.fetchChecksum(downloadUrls);
+                        fetched = true;
+                        if (checksum != null)
+                            stored = store.find(checksum);
+                    }
+
+                    if (stored != null && ToolStore.linkStored(outFile.toPath(), stored)) {
+                        LOGGER.info("Default tool already in store: {}", name);
+                        sha256 = ToolStore.hash(outFile.toPath(), "sha256");
+                    } else {
+                        downloadFile(partFile, downloadUrls, options);
+                        try {
+                            sha256 = store.put(partFile.toPath(), downloadUrl, fetched ? checksum : ToolStore.fetchChecksum(downloadUrls));
+                        } catch (IOException e) {
+                            // don't resume from a corrupt download
+                            Files.deleteIfExists(partFile.toPath());
+                            throw e;
+                        }
+                        publish(partFile, outFile);
+                    }
+                } else {
+                    downloadFile(partFile, downloadUrls, options);
+                    sha256 = ToolStore.hash(partFile.toPath(), "sha256");
+                    publish(partFile, outFile);
                 }
 
-                LOGGER.info("Downloading default tool: {}", name);
+                index.put(outFile.toPath(), download.module(), downloadUrl, sha256);
+                return outFile;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to download default tool: " + name, e);
+            }
+        }
+
+        /// Locks the given tool's lock file exclusively. While this JVM holds a shared lock on it, such as for a
+        /// [tool in use][ToolsCleanup#use(Iterable)], [FileChannel#lock()] throws instead of waiting, so this waits for
+        /// it to be released, as it would for a lock held by another process.
+        private static FileLock lock(FileChannel channel, String name) throws IOException {
+            var waiting = false;
+            while (true) {
                 try {
-                    DownloadUtils.downloadFile(outFile, downloadUrl);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to download default tool: " + name, e);
+                    return channel.lock();
+                } catch (OverlappingFileLockException e) {
+                    if (!waiting) {
+                        waiting = true;
+                        LOGGER.info("Waiting for default tool to no longer be in use: {}", name);
+                    }
+
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting to download default tool: " + name);
+                    }
                 }
-
-                cache.save();
             }
+        }
+
+        private static void downloadFile(File partFile, List<String> downloadUrls, ToolDownloader.Options options) throws IOException {
+            // NOTE: the partial file is not deleted, so that an interrupted download can be resumed
+            LOGGER.info("Downloading default tool: {}", partFile.getName());
+            ToolDownloader.download(partFile.toPath(), downloadUrls, options);
+        }
 
-            return outFile;
+        private static void publish(File partFile, File outFile) throws IOException {
+            Files.move(partFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         }
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/// The state of the last successful run of an incremental tool, from which the input files that changed since then
+/// can be found.
+///
+/// Gradle only gives a task its input changes through a parameter of its task action, which [ToolExecBase#exec()]
+/// cannot take without breaking the tasks that override it. Instead, the state keeps the size and modification time of
+/// every incremental input and output file. The state is only used if nothing else about the run has changed, which is
+/// checked with a fingerprint of the arguments, the other input files, and the rest of the command line, and if the
+/// outputs are still exactly as the last run left them. Otherwise, the tool is run on all of its inputs.
+///
+/// @param fingerprint The fingerprint of everything but the incremental inputs
+/// @param inputs      The incremental input files, by their absolute paths
+/// @param outputs     The output files, by their absolute paths
+record ToolIncrementalState(byte[] fingerprint, Map<String, FileState> inputs, Map<String, FileState> outputs) {
+    private static final Logger LOGGER = Logging.getLogger(ToolIncrementalState.class);
+
+    private static final int MAGIC = 0x4647_494E; // FGIN
+    private static final int VERSION = 1;
+
+    /// The argument that precedes each input file that was added since the last run.
+    static final String ADDED = "--added";
+    /// The argument that precedes each input file that was modified since the last run.
+    static final String MODIFIED = "--modified";
+    /// The argument that precedes each input file that was removed since the last run.
+    static final String REMOVED = "--removed";
+
+    /// The state of a file.
+    ///
+    /// @param length       The size of the file
+    /// @param lastModified The last modification time of the file
+    record FileState(long length, long lastModified) { }
+
+    /// The input files that changed since the last run.
+    ///
+    /// @param added    The files that were added
+    /// @param modified The files that were modified
+    /// @param removed  The files that were removed
+    record Changes(List<String> added, List<String> modified, List<String> removed) {
+        /// Gets the arguments that pass these changes to the tool.
+        ///
+        /// @return The arguments
+        List<String> args() {
+            var args = new ArrayList<String>((this.added.size() + this.modified.size() + this.removed.size()) * 2);
+            add(args, ADDED, this.added);
+            add(args, MODIFIED, this.modified);
+            add(args, REMOVED, this.removed);
+            return args;
+        }
+
+        private static void add(List<String> args, String arg, List<String> files) {
+            for (var file : files) {
+                args.add(arg);
+                args.add(file);
+            }
+        }
+    }
+
+    /// Gets the state of the files in the given collection, including the files in its directories.
+    ///
+    /// @param files The files
+    /// @return The state of each file, by its absolute path
+    static Map<String, FileState> snapshot(FileCollection files) {
+        var snapshot = new TreeMap<String, FileState>();
+        for (var file : files.getAsFileTree()) {
+            snapshot.put(file.getAbsolutePath(), new FileState(file.length(), file.lastModified()));
+        }
+        return snapshot;
+    }
+
+    /// Creates the fingerprint of a run.
+    ///
+    /// @param inputFiles The input files of the task, of which all but the incremental inputs are included
+    /// @param inputs     The incremental inputs, which are excluded
+    /// @param parts      The rest of the run, such as its arguments
+    /// @return The fingerprint
+    static byte[] fingerprint(FileCollection inputFiles, Set<String> inputs, Iterable<?> parts) {
+        var digest = ToolStore.digest("sha256");
+        for (var part : parts) {
+            update(digest, String.valueOf(part));
+        }
+        for (var file : inputFiles.getAsFileTree()) {
+            var path = file.getAbsolutePath();
+            if (inputs.contains(path)) continue;
+
+            update(digest, path + '\n' + file.length() + '\n' + file.lastModified());
+        }
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /// Gets the input files that changed since this state was recorded.
+    ///
+    /// @param fingerprint The fingerprint of the next run
+    /// @param inputs      The current incremental inputs
+    /// @param outputs     The current outputs
+    /// @return The changes, or `null` if the tool must be run on all of its inputs
+    @Nullable Changes changes(byte[] fingerprint, Map<String, FileState> inputs, Map<String, FileState> outputs) {
+        if (!Arrays.equals(this.fingerprint, fingerprint)) {
+            LOGGER.info("Running tool on all inputs, as its arguments or other inputs have changed");
+            return null;
+        }
+        if (!this.outputs.equals(outputs)) {
+            LOGGER.info("Running tool on all inputs, as its outputs have changed since its last run");
+            return null;
+        }
+
+        var added = new ArrayList<String>();
+        var modified = new ArrayList<String>();
+        for (var input : inputs.entrySet()) {
+            var previous = this.inputs.get(input.getKey());
+            if (previous == null)
+                added.add(input.getKey());
+            else if (!previous.equals(input.getValue()))
+                modified.add(input.getKey());
+        }
+
+        var removed = new ArrayList<String>();
+        for (var input : this.inputs.keySet()) {
+            if (!inputs.containsKey(input))
+                removed.add(input);
+        }
+
+        LOGGER.info("Running tool incrementally on {} added, {} modified, and {} removed inputs", added.size(), modified.size(), removed.size());
+        return new Changes(added, modified, removed);
+    }
+
+    /// Reads the state of the last run.
+    ///
+    /// @param file The state file
+    /// @return The state, or `null` if there is none
+    static @Nullable ToolIncrementalState read(Path file) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+
+            var fingerprint = new byte[in.readInt()];
+            in.readFully(fingerprint);
+            return new ToolIncrementalState(fingerprint, readFiles(in), readFiles(in));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.info("Ignoring unreadable incremental state {}", file, e);
+            return null;
+        }
+    }
+
+    private static Map<String, FileState> readFiles(DataInputStream in) throws IOException {
+        var size = in.readInt();
+        var files = new TreeMap<String, FileState>();
+        for (int i = 0; i < size; i++) {
+            files.put(in.readUTF(), new FileState(in.readLong(), in.readLong()));
+        }
+        return files;
+    }
+
+    /// Writes this state.
+    ///
+    /// @param file The state file
+    /// @throws IOException If the state could not be written
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(this.fingerprint.length);
+                out.write(this.fingerprint);
+                writeFiles(out, this.inputs);
+                writeFiles(out, this.outputs);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeFiles(DataOutputStream out, Map<String, FileState> files) throws IOException {
+        out.writeInt(files.size());
+        for (var file : files.entrySet()) {
+            out.writeUTF(file.getKey());
+            out.writeLong(file.getValue().length());
+            out.writeLong(file.getValue().lastModified());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/// A persistent index of the tools cached in a plugin's global caches.
+///
+/// The index is stored as a single compact binary file (`tools.index`) in the global caches directory, and records the
+/// module, download URL, SHA-256 hash, size, and last access time of every tool. It is loaded once per daemon and kept
+/// in memory, so checking if a tool is valid does not need to read anything besides the tool's own file attributes. It
+/// is only read again if another process has changed it.
+///
+/// Changes are made under a file lock, merged with the latest index on disk, and written to a temporary file that
+/// atomically replaces the index, so that concurrent builds never see a partially written index.
+final class ToolIndex {
+    /// The name of the index file, relative to the plugin's global caches.
+    static final String FILE_NAME = "tools.index";
+
+    /// How old the recorded last access time of a tool must be before it is updated. This avoids rewriting the index
+    /// every time a tool is used, while still being precise enough for eviction.
+    static final Duration ACCESS_GRANULARITY = Duration.ofHours(1);
+
+    private static final int MAGIC = 0x4647_5449; // FGTI
+    private static final int VERSION = 1;
+
+    private static final Logger LOGGER = Logging.getLogger(ToolIndex.class);
+    private static final Map<Path, ToolIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /// A tool in the index.
+    ///
+    /// @param module     The module of the tool, or an empty string if it was not downloaded from a Maven repository
+    /// @param url        The URL the tool was downloaded from
+    /// @param sha256     The SHA-256 hash of the tool
+    /// @param size       The size of the tool in bytes
+    /// @param lastAccess The time the tool was last used, in milliseconds since the epoch
+    record Entry(String module, String url, String sha256, long size, long lastAccess) {
+        Entry withLastAccess(long lastAccess) {
+            return new Entry(this.module, this.url, this.sha256, this.size, lastAccess);
+        }
+    }
+
+    private final Path root;
+    private final Path file;
+    private final Path lockFile;
+
+    private volatile Map<String, Entry> entries = Map.of();
+    private volatile @Nullable FileTime loaded;
+
+    private ToolIndex(Path file) {
+        this.root = file.getParent();
+        this.file = file;
+        this.lockFile = file.resolveSibling(FILE_NAME + ".lock");
+    }
+
+    /// Gets the index of the given global caches directory, loading it if it has changed since it was last loaded.
+    ///
+    /// @param cachesDir The plugin's global caches directory
+    /// @return The index
+    static ToolIndex of(Path cachesDir) {
+        var index = INDEXES.computeIfAbsent(cachesDir.resolve(FILE_NAME).toAbsolutePath().normalize(), ToolIndex::new);
+        index.reloadIfChanged();
+        return index;
+    }
+
+    /// Checks if the given tool is cached and was downloaded from the given URL. If it is, its last access time is
+    /// updated.
+    ///
+    /// @param tool The tool file
+    /// @param url  The URL the tool is expected to have been downloaded from
+    /// @return If the tool is valid
+    boolean isValid(Path tool, String url) {
+        var key = this.key(tool);
+        var entry = this.entries.get(key);
+        if (entry == null || !url.equals(entry.url())) {
+            // another process may have downloaded it
+            this.reloadIfChanged();
+            entry = this.entries.get(key);
+            if (entry == null || !url.equals(entry.url())) return false;
+        }
+
+        try {
+            if (Files.size(tool) != entry.size()) return false;
+        } catch (IOException e) {
+            return false;
+        }
+
+        this.touch(key, entry);
+        return true;
+    }
+
+    /// Gets the entry of the given tool.
+    ///
+    /// @param tool The tool file
+    /// @return The entry, or `null` if the tool is not in the index
+    @Nullable Entry get(Path tool) {
+        return this.entries.get(this.key(tool));
+    }
+
+    /// Gets all tools in the index.
+    ///
+    /// @return The tool files mapped to their entries
+    Map<Path, Entry> getAll() {
+        var entries = this.entries;
+        var all = new HashMap<Path, Entry>(entries.size());
+        entries.forEach((key, entry) -> all.put(this.root.resolve(key), entry));
+        return all;
+    }
+
+    /// Adds (or replaces) the given tool in the index.
+    ///
+    /// @param tool   The tool file
+    /// @param module The module of the tool
+    /// @param url    The URL the tool was downloaded from
+    /// @param sha256 The SHA-256 hash of the tool
+    /// @throws IOException If the index could not be written
+    void put(Path tool, String module, String url, String sha256) throws IOException {
+        var entry = new Entry(module, url, sha256, Files.size(tool), System.currentTimeMillis());
+        var key = this.key(tool);
+        this.update(entries -> entries.put(key, entry));
+    }
+
+    /// Removes the given tool from the index. This does not delete the tool itself.
+    ///
+    /// @param tool The tool file
+    /// @throws IOException If the index could not be written
+    void remove(Path tool) throws IOException {
+        var key = this.key(tool);
+        this.update(entries -> entries.remove(key));
+    }
+
+    private void touch(String key, Entry entry) {
+        var now = System.currentTimeMillis();
+        if (now - entry.lastAccess() < ACCESS_GRANULARITY.toMillis()) return;
+
+        try {
+            this.update(entries -> entries.computeIfPresent(key, (k, e) -> e.withLastAccess(now)));
+        } catch (IOException e) {
+            // not worth failing the build over
+            LOGGER.warn("Failed to update last access time of tool {} in {}", key, this.file, e);
+        }
+    }
+
+    private String key(Path tool) {
+        return this.root.relativize(tool.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    @SuppressWarnings("try") // the lock only needs to be held while updating
+    private synchronized void update(Consumer<Map<String, Entry>> action) throws IOException {
+        Files.createDirectories(this.root);
+        try (var channel = FileChannel.open(this.lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             var lock = channel.lock()) {
+            // merge with any changes made by other processes
+            var entries = new HashMap<>(this.read());
+            action.accept(entries);
+
+            var tmp = Files.createTempFile(this.root, FILE_NAME, ".tmp");
+            try {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    write(out, entries);
+                }
+                Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+
+            this.entries = Map.copyOf(entries);
+            this.loaded = Files.getLastModifiedTime(this.file);
+        }
+    }
+
+    private synchronized void reloadIfChanged() {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(this.file);
+        } catch (IOException e) {
+            // the index has not been written yet, or was deleted
+            this.entries = Map.of();
+            this.loaded = null;
+            return;
+        }
+
+        if (modified.equals(this.loaded)) return;
+
+        this.entries = Map.copyOf(this.read());
+        this.loaded = modified;
+    }
+
+    private Map<String, Entry> read() {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Ignoring tool index with unknown format: {}", this.file);
+                return Map.of();
+            }
+
+            var size = in.readInt();
+            var entries = new HashMap<String, Entry>(size);
+            for (int i = 0; i < size; i++) {
+                var key = in.readUTF();
+                entries.put(key, new Entry(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong()));
+            }
+            return entries;
+        } catch (NoSuchFileException e) {
+            return Map.of();
+        } catch (IOException e) {
+            // the tools will be verified and indexed again when they are next used
+            LOGGER.warn("Failed to read tool index {}, it will be rebuilt", this.file, e);
+            return Map.of();
+        }
+    }
+
+    private static void write(DataOutputStream out, Map<String, Entry> entries) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (var e : entries.entrySet()) {
+            var entry = e.getValue();
+            out.writeUTF(e.getKey());
+            out.writeUTF(entry.module());
+            out.writeUTF(entry.url());
+            out.writeUTF(entry.sha256());
+            out.writeLong(entry.size());
+            out.writeLong(entry.lastAccess());
+        }
+    }
+}
@@ -19,17 +19,19 @@ non-sealed interface ToolInternal extends Tool, HasPublicType {
     /// Gets this tool and returns a provider for the downloaded/cached file.
     ///
     /// @param cachesDir The caches directory to store the downloaded tool in
+    /// @param storeDir  The [content-addressed store][ToolStore] shared between plugins
     /// @param toolsExt  The plugin's tools extension, which may contain overrides for the tool definition
     /// @return The provider to the tool file
-    Tool.Resolved get(Provider<? extends Directory> cachesDir, ProviderFactory providers, ToolsExtensionImpl toolsExt);
+    Tool.Resolved get(Provider<? extends Directory> cachesDir, Provider<? extends Directory> storeDir, ProviderFactory providers, ToolsExtensionImpl toolsExt);
 
     /// Gets this tool and returns a provider for the downloaded/cached file.
     ///
     /// @param cachesDir The caches directory to store the downloaded tool in
+    /// @param storeDir  The [content-addressed store][ToolStore] shared between plugins
     /// @param toolsExt  The plugin's tools extension, which may contain overrides for the tool definition
     /// @return The provider to the tool file
-    default Tool.Resolved get(Directory cachesDir, ProviderFactory providers, ToolsExtensionImpl toolsExt) {
-        return this.get(providers.provider(() -> cachesDir), providers, toolsExt);
+    default Tool.Resolved get(Directory cachesDir, Directory storeDir, ProviderFactory providers, ToolsExtensionImpl toolsExt) {
+        return this.get(providers.provider(() -> cachesDir), providers.provider(() -> storeDir), providers, toolsExt);
     }
 
     non-sealed interface Definition extends Tool.Definition, HasPublicType {
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/// Picks the heap size, garbage collector, and JIT compilation flags of a forked tool from a history of its previous
+/// runs.
+///
+/// Each run is forked with a GC log, from which the time spent in GC pauses, the peak heap usage, and the live heap
+/// (the most retained after a collection) are read once the tool has finished. These are kept, along with the run's
+/// wall time, in a small history file next to the tool. Later runs use the last [#HISTORY_SIZE] runs to choose:
+///
+/// - `-Xmx`, as a multiple of the live heap, with more headroom if the tool spent a lot of time in GC, kept within
+///   the configured bounds (by default, at least 64 MiB and at most the physical memory divided by the maximum
+///   amount of Gradle workers, so that parallel forks do not over-commit memory)
+/// - `-XX:+UseSerialGC` for small, short-lived tools, and `-XX:+UseParallelGC` for larger tools that spent a lot of
+///   time in GC, since both favor throughput over pause times
+/// - `-XX:TieredStopAtLevel=1` for tools that finish quickly, which would not benefit from optimizing compilation
+///
+/// Flags that are already given in the tool's JVM arguments are never overridden, and the chosen heap size is never
+/// below an initial heap size given in them. If the previous run failed, no heap size is chosen, in case it failed
+/// because the heap was too small. Failed runs are recorded even if they did not write a GC log, such as when the JVM
+/// did not start.
+///
+/// The history is updated under a file lock, merged with the latest history on disk, so that parallel runs of the
+/// same tool do not lose each other's runs.
+final class ToolJvmSizing {
+    private static final Logger LOGGER = Logging.getLogger(ToolJvmSizing.class);
+
+    /// The name of the history file, relative to the tool's directory.
+    static final String FILE_NAME = "jvm.history";
+
+    /// The amount of previous runs to base the JVM flags on.
+    static final int HISTORY_SIZE = 10;
+
+    private static final int MAGIC = 0x4647_4A48; // FGJH
+    private static final int VERSION = 1;
+
+    /// Unified logging, which the GC log is read from, was added in Java 9.
+    private static final int MIN_JAVA_VERSION = 9;
+
+    private static final long MIB = 1024 * 1024;
+    private static final long DEFAULT_MIN_HEAP = 64 * MIB;
+    private static final long SMALL_HEAP = 256 * MIB;
+    private static final long SHORT_RUN = 2_000;
+    private static final long SERIAL_RUN = 10_000;
+    private static final double HIGH_GC_RATIO = 0.1;
+
+    private static final Pattern PAUSE = Pattern.compile("Pause .* (\\d+)([KMG])->(\\d+)([KMG])\\(\\d+[KMG]\\) ([\\d.]+)ms");
+    private static final Pattern HEAP_AT_EXIT = Pattern.compile("total \\d+K, used (\\d+)K");
+
+    /// A previous run of the tool.
+    ///
+    /// @param wallTime  The wall time of the run, in milliseconds
+    /// @param gcTime    The time spent in GC pauses, in milliseconds
+    /// @param peakHeap  The peak heap usage, in bytes
+    /// @param liveHeap  The most heap retained after a collection, in bytes
+    /// @param exitValue The exit value of the tool
+    record Run(long wallTime, long gcTime, long peakHeap, long liveHeap, int exitValue) { }
+
+    /// The bounds to keep the chosen heap size within.
+    ///
+    /// @param minHeap The minimum heap size, in bytes, or `0` for the default
+    /// @param maxHeap The maximum heap size, in bytes, or `0` for the default
+    record Bounds(long minHeap, long maxHeap) {
+        /// Parses the bounds from heap sizes in the same format as `-Xmx`, such as `512m` or `2g`.
+        ///
+        /// @param minHeap The minimum heap size, or `null` for the default
+        /// @param maxHeap The maximum heap size, or `null` for the default
+        /// @return The bounds
+        static Bounds parse(@Nullable String minHeap, @Nullable String maxHeap) {
+            return new Bounds(minHeap != null ? parseSize(minHeap) : 0, maxHeap != null ? parseSize(maxHeap) : 0);
+        }
+    }
+
+    private final Path file;
+    private final Path lockFile;
+    private final Path gcLog;
+    private final List<Run> history;
+
+    private ToolJvmSizing(Path file, Path gcLog, List<Run> history) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(FILE_NAME + ".lock");
+        this.gcLog = gcLog;
+        this.history = history;
+    }
+
+    /// Loads the history of the tool in the given directory.
+    ///
+    /// @param toolDir  The tool's directory
+    /// @param tempDir  The directory to write the GC log of the next run to
+    /// @param launcher The Java launcher the tool is forked with
+    /// @return The JVM sizing for the next run, or `null` if the tool's JVM cannot write the GC log
+    static @Nullable ToolJvmSizing load(Path toolDir, Path tempDir, JavaLauncher launcher) {
+        if (!launcher.getMetadata().getLanguageVersion().canCompileOrRun(MIN_JAVA_VERSION)) return null;
+
+        var file = toolDir.resolve(FILE_NAME);
+        return new ToolJvmSizing(file, tempDir.resolve("gc.log"), read(file));
+    }
+
+    /// Chooses the JVM arguments of the next run, and adds the arguments needed to record it.
+    ///
+    /// @param jvmArgs    The JVM arguments given to the tool, which take precedence
+    /// @param bounds     The bounds of the heap size
+    /// @param maxWorkers The maximum amount of Gradle workers
+    /// @return The JVM arguments to add
+    List<String> jvmArgs(List<String> jvmArgs, Bounds bounds, int maxWorkers) {
+        var args = new ArrayList<String>();
+        args.add("-Xlog:gc,gc+heap+exit:file=\"" + this.gcLog + "\":uptime");
+        if (this.history.isEmpty()) return args;
+
+        long wallTime = 0, gcTime = 0, liveHeap = 0;
+        for (var run : this.history) {
+            wallTime += run.wallTime();
+            gcTime += run.gcTime();
+            liveHeap = Math.max(liveHeap, run.liveHeap());
+        }
+        var averageWallTime = wallTime / this.history.size();
+        var highGc = wallTime > 0 && (double) gcTime / wallTime > HIGH_GC_RATIO;
+
+        long heap = 0;
+        var lastFailed = this.history.get(this.history.size() - 1).exitValue() != 0;
+        if (liveHeap > 0 && !lastFailed && !hasArg(jvmArgs, "-Xmx", "-XX:MaxHeapSize", "-XX:MaxRAM")) {
+            // the JVM refuses to start if its initial heap is larger than its maximum heap
+            var minHeap = Math.max(bounds.minHeap() > 0 ? bounds.minHeap() : DEFAULT_MIN_HEAP, initialHeap(jvmArgs));
+            var maxHeap = bounds.maxHeap() > 0 ? bounds.maxHeap() : defaultMaxHeap(maxWorkers);
+            heap = Math.max(minHeap, Math.min(maxHeap, liveHeap * (highGc ? 4 : 3)));
+            args.add("-Xmx" + (heap + MIB - 1) / MIB + 'm');
+        }
+
+        if (!hasGcArg(jvmArgs)) {
+            if (heap > 0 && heap <= SMALL_HEAP && averageWallTime < SERIAL_RUN)
+                args.add("-XX:+UseSerialGC");
+            else if (heap > SMALL_HEAP && highGc)
+                args.add("-XX:+UseParallelGC");
+        }
+
+        if (averageWallTime < SHORT_RUN && !hasArg(jvmArgs, "-XX:TieredStopAtLevel", "-XX:+TieredCompilation", "-XX:-TieredCompilation"))
+            args.add("-XX:TieredStopAtLevel=1");
+
+        return args;
+    }
+
+    /// Records the run that just finished, reading its GC log.
+    ///
+    /// @param wallTime  The wall time of the run, in milliseconds
+    /// @param exitValue The exit value of the tool
+    void record(long wallTime, int exitValue) {
+        long gcTime = 0, peakHeap = 0, liveHeap = 0, heapAtExit = 0;
+        try (var lines = Files.lines(this.gcLog, Charset.defaultCharset())) {
+            for (var line : (Iterable<String>) lines::iterator) {
+                var pause = PAUSE.matcher(line);
+                if (pause.find()) {
+                    peakHeap = Math.max(peakHeap, size(pause.group(1), pause.group(2)));
+                    liveHeap = Math.max(liveHeap, size(pause.group(3), pause.group(4)));
+                    gcTime += (long) Math.ceil(Double.parseDouble(pause.group(5)));
+                    continue;
+                }
+
+                var exit = HEAP_AT_EXIT.matcher(line);
+                if (exit.find())
+                    heapAtExit += Long.parseLong(exit.group(1)) * 1024;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (exitValue == 0) {
+                LOGGER.info("Failed to read GC log {}, the run will not be recorded", this.gcLog, e);
+                return;
+            }
+
+            // the tool may have failed before the JVM even started, which the next run must still know about
+            LOGGER.info("Failed to read GC log {}, the failed run will be recorded without it", this.gcLog, e);
+            gcTime = peakHeap = liveHeap = heapAtExit = 0;
+        } finally {
+            try {
+                Files.deleteIfExists(this.gcLog);
+            } catch (IOException ignored) { }
+        }
+
+        // without any collections, what is in use at exit is all that was ever needed
+        peakHeap = Math.max(peakHeap, heapAtExit);
+        if (liveHeap == 0)
+            liveHeap = heapAtExit;
+
+        var run = new Run(wallTime, gcTime, peakHeap, liveHeap, exitValue);
+        try {
+            this.update(run);
+        } catch (IOException e) {
+            LOGGER.info("Failed to write JVM history {}", this.file, e);
+        }
+    }
+
+    @SuppressWarnings("try") // the lock only needs to be held while updating
+    private void update(Run run) throws IOException {
+        Files.createDirectories(this.file.getParent());
+        // file locks are held by the whole JVM, so runs in this JVM must take turns
+        synchronized (ToolJvmSizing.class) {
+            try (var channel = FileChannel.open(this.lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 var lock = channel.lock()) {
+                // another run may have been recorded since this one started
+                var history = new ArrayList<>(read(this.file));
+                history.add(run);
+                if (history.size() > HISTORY_SIZE)
+                    history.subList(0, history.size() - HISTORY_SIZE).clear();
+
+                write(this.file, history);
+            }
+        }
+    }
+
+    private static boolean hasArg(List<String> jvmArgs, String... prefixes) {
+        for (var arg : jvmArgs) {
+            for (var prefix : prefixes) {
+                if (arg.startsWith(prefix)) return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static long initialHeap(List<String> jvmArgs) {
+        long initialHeap = 0;
+        for (var arg : jvmArgs) {
+            String size;
+            if (arg.startsWith("-Xms"))
+                size = arg.substring("-Xms".length());
+            else if (arg.startsWith("-XX:InitialHeapSize=") || arg.startsWith("-XX:MinHeapSize="))
+                size = arg.substring(arg.indexOf('=') + 1);
+            else
+                continue;
+
+            try {
+                initialHeap = Math.max(initialHeap, parseSize(size));
+            } catch (IllegalArgumentException ignored) {
+                // the JVM will report it
+            }
+        }
+
+        return initialHeap;
+    }
+
+    private static boolean hasGcArg(List<String> jvmArgs) {
+        for (var arg : jvmArgs) {
+            if ((arg.startsWith("-XX:+Use") || arg.startsWith("-XX:-Use")) && arg.endsWith("GC")) return true;
+        }
+
+        return false;
+    }
+
+    private static long defaultMaxHeap(int maxWorkers) {
+        var os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean sunOs)
+            return Math.max(DEFAULT_MIN_HEAP, sunOs.getTotalMemorySize() / Math.max(1, maxWorkers));
+
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    private static long size(String value, String unit) {
+        return Long.parseLong(value) * switch (unit) {
+            case "K" -> 1024L;
+            case "M" -> MIB;
+            default -> 1024 * MIB;
+        };
+    }
+
+    /// Parses a heap size in the same format as `-Xmx`, such as `512m` or `2g`.
+    ///
+    /// @param size The heap size
+    /// @return The heap size in bytes
+    /// @throws IllegalArgumentException If the heap size is invalid
+    static long parseSize(String size) {
+        var s = size.trim().toLowerCase(Locale.ROOT);
+        var unit = s.isEmpty() ? ' ' : s.charAt(s.length() - 1);
+        var multiplier = switch (unit) {
+            case 'k' -> 1024L;
+            case 'm' -> MIB;
+            case 'g' -> 1024 * MIB;
+            default -> 1L;
+        };
+
+        try {
+            return Long.parseLong(multiplier == 1 ? s : s.substring(0, s.length() - 1)) * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid heap size: " + size, e);
+        }
+    }
+
+    private static List<Run> read(Path file) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return List.of();
+
+            var size = in.readInt();
+            var history = new ArrayList<Run>(size);
+            for (int i = 0; i < size; i++) {
+                history.add(new Run(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt()));
+            }
+            return history;
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            LOGGER.info("Ignoring unreadable JVM history {}", file, e);
+            return List.of();
+        }
+    }
+
+    private static void write(Path file, List<Run> history) throws IOException {
+        var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(history.size());
+                for (var run : history) {
+                    out.writeLong(run.wallTime());
+                    out.writeLong(run.gcTime());
+                    out.writeLong(run.peakHeap());
+                    out.writeLong(run.liveHeap());
+                    out.writeInt(run.exitValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
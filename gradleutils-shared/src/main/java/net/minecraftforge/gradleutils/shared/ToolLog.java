@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/// The log file of a [tool execution][ToolExecBase].
+///
+/// Writes are buffered, and flushed at most every [#FLUSH_INTERVAL] (and when the log is closed), so that tools that
+/// print a lot of output do not cost a write to the file system per line. The log can be written as plain text or as
+/// [JSON lines][ToolExecBase.LogFormat#JSONL], can be compressed with gzip, and can be rotated once it grows past a
+/// given size, keeping up to [#MAX_ROTATED] previous files named `<log>.1` (the newest) to `<log>.<n>`.
+final class ToolLog implements Closeable {
+    private static final Logger LOGGER = Logging.getLogger(ToolLog.class);
+
+    /// The longest a line may stay in the buffer before it is written to the log file.
+    static final Duration FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    /// The maximum amount of rotated log files to keep.
+    static final int MAX_ROTATED = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "Tool Log Flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final ToolExecBase.LogFormat format;
+    private final boolean compress;
+    private final long maxSize;
+    private final ScheduledFuture<?> flusher;
+
+    private Writer writer;
+    private long size;
+    private boolean dirty;
+
+    /// Opens a log file, replacing any previous log (and its rotated files) at the same location.
+    ///
+    /// @param file     The log file, to which `.gz` is appended if compressed
+    /// @param format   The format of the log
+    /// @param compress If the log should be compressed with gzip
+    /// @param maxSize  The size in characters after which the log is rotated, or `0` to never rotate it
+    /// @throws IOException If the log file could not be opened
+    ToolLog(Path file, ToolExecBase.LogFormat format, boolean compress, long maxSize) throws IOException {
+        this.file = compress ? file.resolveSibling(file.getFileName() + ".gz") : file;
+        this.format = format;
+        this.compress = compress;
+        this.maxSize = maxSize;
+
+        for (int i = 1; i <= MAX_ROTATED; i++) {
+            Files.deleteIfExists(this.rotated(i));
+        }
+
+        this.writer = this.open();
+        this.flusher = FLUSHER.scheduleWithFixedDelay(this::flushIfDirty, FLUSH_INTERVAL.toMillis(), FLUSH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /// @return The file the log is written to, which ends with `.gz` if compressed
+    Path file() {
+        return this.file;
+    }
+
+    /// Writes a line describing the execution, such as its arguments, to the log.
+    ///
+    /// @param line The line
+    void header(String line) {
+        this.write("header", line);
+    }
+
+    /// Writes a line of the tool's standard output to the log.
+    ///
+    /// @param line The line
+    void out(String line) {
+        this.write("out", line);
+    }
+
+    /// Writes a line of the tool's standard error to the log.
+    ///
+    /// @param line The line
+    void err(String line) {
+        this.write("err", line);
+    }
+
+    /// Appends the entries of another, uncompressed log in the same format to this log, such as the log of a shard.
+    ///
+    /// @param log The log to append
+    synchronized void merge(Path log) {
+        try (var reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            for (String entry; (entry = reader.readLine()) != null; ) {
+                this.writeEntry(entry + '\n');
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to merge tool log {} into {}", log, this.file, e);
+        }
+    }
+
+    private void write(String stream, String line) {
+        String entry;
+        if (this.format == ToolExecBase.LogFormat.JSONL) {
+            entry = "{\"time\":\"" + Instant.now() + "\",\"stream\":\"" + stream + "\",\"line\":\"" + escape(line) + "\"}\n";
+        } else {
+            entry = line + '\n';
+        }
+
+        this.writeEntry(entry);
+    }
+
+    private synchronized void writeEntry(String entry) {
+        try {
+            this.writer.write(entry);
+            this.size += entry.length();
+            this.dirty = true;
+
+            if (this.maxSize > 0 && this.size >= this.maxSize)
+                this.rotate();
+        } catch (IOException e) {
+            // the log file is only for diagnostics, so the tool should not fail because of it
+            LOGGER.warn("Failed to write to tool log {}", this.file, e);
+        }
+    }
+
+    private synchronized void flushIfDirty() {
+        if (!this.dirty) return;
+
+        try {
+            this.writer.flush();
+            this.dirty = false;
+        } catch (IOException e) {
+            LOGGER.debug("Failed to flush tool log {}", this.file, e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        this.writer.close();
+        for (int i = MAX_ROTATED; i > 1; i--) {
+            var previous = this.rotated(i - 1);
+            if (Files.exists(previous))
+                Files.move(previous, this.rotated(i), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(this.file, this.rotated(1), StandardCopyOption.REPLACE_EXISTING);
+
+        this.writer = this.open();
+        this.size = 0;
+        this.dirty = false;
+    }
+
+    private Path rotated(int index) {
+        var name = this.file.getFileName().toString();
+        if (this.compress)
+            name = name.substring(0, name.length() - ".gz".length()) + '.' + index + ".gz";
+        else
+            name = name + '.' + index;
+
+        return this.file.resolveSibling(name);
+    }
+
+    private Writer open() throws IOException {
+        var output = Files.newOutputStream(this.file);
+        // the writer's own buffer is large enough, the gzip stream only needs to hold a deflate block
+        return new BufferedWriter(new OutputStreamWriter(this.compress ? new GZIPOutputStream(output) : output, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.flusher.cancel(false);
+        this.writer.close();
+    }
+
+    /// Escapes a string to be written within quotes in JSON.
+    ///
+    /// @param s The string
+    /// @return The escaped string
+    static String escape(String s) {
+        StringBuilder builder = null;
+        for (int i = 0; i < s.length(); i++) {
+            var c = s.charAt(i);
+            String replacement;
+            switch (c) {
+                case '"' -> replacement = "\\\"";
+                case '\\' -> replacement = "\\\\";
+                case '\n' -> replacement = "\\n";
+                case '\r' -> replacement = "\\r";
+                case '\t' -> replacement = "\\t";
+                default -> replacement = c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+            }
+
+            if (replacement == null) {
+                if (builder != null) builder.append(c);
+                continue;
+            }
+
+            if (builder == null)
+                builder = new StringBuilder(s.length() + 16).append(s, 0, i);
+            builder.append(replacement);
+        }
+
+        return builder != null ? builder.toString() : s;
+    }
+}
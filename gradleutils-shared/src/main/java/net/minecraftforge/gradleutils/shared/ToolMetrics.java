@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import javax.inject.Inject;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Collects metrics of every tool invocation in the build, and writes them to a JSON report once the build is done.
+///
+/// The report is a single object with an `invocations` array, in the order the invocations started. Each invocation
+/// has the fields of [Invocation], with times in milliseconds. Values that could not be measured are `-1`.
+abstract class ToolMetrics implements BuildService<ToolMetrics.Parameters>, AutoCloseable {
+    private static final Logger LOGGER = Logging.getLogger(ToolMetrics.class);
+
+    /// The system property given to forked tools when metrics are collected, so that their process can be found.
+    static final String INVOCATION_PROPERTY = "net.minecraftforge.gradleutils.invocation";
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "Tool CPU Sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    interface Parameters extends BuildServiceParameters {
+        /// The file to write the report to.
+        ///
+        /// @return The property for the report file
+        RegularFileProperty getReportFile();
+    }
+
+    /// The metrics of a single tool invocation.
+    ///
+    /// @param task                  The path of the task that ran the tool
+    /// @param tool                  The name of the tool
+    /// @param executionMode         The [execution mode][Tool.ExecutionMode] the tool ran with
+    /// @param start                 When the task started executing
+    /// @param launcherResolution    The time taken to resolve the Java launcher
+    /// @param classpathResolution   The time taken to resolve the tool's classpath
+    /// @param firstOutput           The time from starting the tool to its first output
+    /// @param runtime               The time from starting the tool to it finishing
+    /// @param cpuTime               The CPU time used by the tool
+    /// @param permitWait            The time spent waiting for the [memory to fork the tool][ToolForkPermits]
+    /// @param permitMemory          The memory, in bytes, reserved to fork the tool, or `-1` if it was not forked
+    /// @param exitCode              The exit code of the tool
+    /// @param stdOutBytes           The amount of bytes the tool wrote to its standard output
+    /// @param stdErrBytes           The amount of bytes the tool wrote to its standard error
+    record Invocation(String task, String tool, Tool.ExecutionMode executionMode, Instant start, long launcherResolution, long classpathResolution, long firstOutput, long runtime, long cpuTime, long permitWait, long permitMemory, int exitCode, long stdOutBytes, long stdErrBytes) { }
+
+    private final Queue<Invocation> invocations = new ConcurrentLinkedQueue<>();
+
+    @Inject
+    public ToolMetrics() { }
+
+    /// Records a finished invocation.
+    ///
+    /// @param invocation The invocation
+    void record(Invocation invocation) {
+        this.invocations.add(invocation);
+    }
+
+    @Override
+    public void close() {
+        if (this.invocations.isEmpty()) return;
+
+        var invocations = new ArrayList<>(this.invocations);
+        invocations.sort(Comparator.comparing(Invocation::start));
+
+        var file = this.getParameters().getReportFile().get().getAsFile().toPath();
+        try {
+            Files.createDirectories(file.getParent());
+            var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (var writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    write(writer, invocations);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            LOGGER.info("Wrote metrics of {} tool invocations to {}", invocations.size(), file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write tool metrics to {}", file, e);
+        }
+    }
+
+    private static void write(BufferedWriter writer, Iterable<Invocation> invocations) throws IOException {
+        writer.write("{\n  \"invocations\": [");
+        var first = true;
+        for (var invocation : invocations) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+
+            writer.write("    {\"task\": \"" + ToolLog.escape(invocation.task())
+                + "\", \"tool\": \"" + ToolLog.escape(invocation.tool())
+                + "\", \"executionMode\": \"" + ToolLog.escape(invocation.executionMode().toString())
+                + "\", \"start\": \"" + ToolLog.escape(invocation.start().toString())
+                + "\", \"launcherResolution\": " + invocation.launcherResolution()
+                + ", \"classpathResolution\": " + invocation.classpathResolution()
+                + ", \"firstOutput\": " + invocation.firstOutput()
+                + ", \"runtime\": " + invocation.runtime()
+                + ", \"cpuTime\": " + invocation.cpuTime()
+                + ", \"permitWait\": " + invocation.permitWait()
+                + ", \"permitMemory\": " + invocation.permitMemory()
+                + ", \"exitCode\": " + invocation.exitCode()
+                + ", \"stdOutBytes\": " + invocation.stdOutBytes()
+                + ", \"stdErrBytes\": " + invocation.stdErrBytes()
+                + '}');
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    /// Measures a single tool invocation as a task executes it.
+    static final class Recorder {
+        private Instant start = Instant.now();
+        private long phase = System.nanoTime();
+        private long launcherResolution = -1;
+        private long classpathResolution = -1;
+        private volatile long spawned = -1;
+        private final AtomicLong firstOutput = new AtomicLong(-1);
+        private final AtomicLong stdOutBytes = new AtomicLong();
+        private final AtomicLong stdErrBytes = new AtomicLong();
+        private final AtomicLong cpuTime = new AtomicLong(-1);
+        private long permitWait = -1;
+        private long permitMemory = -1;
+
+        /// Marks the Java launcher as resolved.
+        void launcherResolved() {
+            this.launcherResolution = this.lap();
+        }
+
+        /// Marks the classpath as resolved.
+        void classpathResolved() {
+            this.classpathResolution = this.lap();
+        }
+
+        /// Marks the tool as started.
+        void spawned() {
+            this.lap();
+            this.spawned = this.phase;
+        }
+
+        /// Creates a recorder for one of several runs of the tool in the same task, such as a shard, which shares the
+        /// time taken to resolve the launcher and classpath with this one.
+        ///
+        /// @return The recorder for the run
+        Recorder split() {
+            var split = new Recorder();
+            split.start = this.start;
+            split.launcherResolution = this.launcherResolution;
+            split.classpathResolution = this.classpathResolution;
+            return split;
+        }
+
+        /// Marks the permit to fork the tool as taken.
+        ///
+        /// @param permit The permit
+        void permitted(ToolForkPermits.Permit permit) {
+            this.lap();
+            this.permitWait = permit.waitTime();
+            this.permitMemory = permit.memory();
+        }
+
+        /// Sets the CPU time used by the tool.
+        ///
+        /// @param nanos The CPU time, in nanoseconds
+        void cpuTime(long nanos) {
+            this.cpuTime.set(nanos);
+        }
+
+        /// Counts a line of output that is replayed after the tool has finished, for when the raw output cannot be
+        /// [metered][#meter(OutputStream, boolean)]. The size of the line is counted in characters, and the time of the
+        /// first output stays unknown.
+        ///
+        /// @param line The line
+        /// @param err  If the line is from the standard error
+        void replayed(String line, boolean err) {
+            (err ? this.stdErrBytes : this.stdOutBytes).addAndGet(line.length() + 1);
+        }
+
+        /// Wraps the given stream to count the bytes written to it.
+        ///
+        /// @param output The stream
+        /// @param err    If the stream is for the standard error
+        /// @return The wrapped stream
+        OutputStream meter(OutputStream output, boolean err) {
+            return new FilterOutputStream(output) {
+                @Override
+                public void write(int b) throws IOException {
+                    Recorder.this.output(1, err);
+                    this.out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    Recorder.this.output(len, err);
+                    this.out.write(b, off, len);
+                }
+            };
+        }
+
+        private void output(long bytes, boolean err) {
+            if (this.spawned >= 0 && this.firstOutput.get() < 0)
+                this.firstOutput.compareAndSet(-1, System.nanoTime() - this.spawned);
+
+            (err ? this.stdErrBytes : this.stdOutBytes).addAndGet(bytes);
+        }
+
+        /// Samples the CPU time of the forked tool with the given invocation ID until the returned handle is closed.
+        /// Only the processes started by this JVM are looked at, and only on platforms that expose the arguments of
+        /// processes.
+        ///
+        /// @param invocationId The value of the [invocation property][#INVOCATION_PROPERTY] given to the tool
+        /// @return The handle to close once the tool has finished
+        Closeable sampleCpuTime(String invocationId) {
+            var argument = "-D" + INVOCATION_PROPERTY + '=' + invocationId;
+            ScheduledFuture<?> sampling = SAMPLER.scheduleAtFixedRate(() -> ProcessHandle.current().children().forEach(process -> {
+                var info = process.info();
+                var arguments = info.arguments().orElse(null);
+                if (arguments == null || !Arrays.asList(arguments).contains(argument)) return;
+
+                info.totalCpuDuration().map(Duration::toNanos).ifPresent(this::cpuTime);
+            }), 0, 100, TimeUnit.MILLISECONDS);
+            return () -> sampling.cancel(false);
+        }
+
+        /// Creates a new invocation ID for [#sampleCpuTime(String)].
+        ///
+        /// @return The invocation ID
+        static String newInvocationId() {
+            return UUID.randomUUID().toString();
+        }
+
+        /// Finishes measuring the invocation.
+        ///
+        /// @param task          The path of the task that ran the tool
+        /// @param tool          The name of the tool
+        /// @param executionMode The execution mode the tool ran with
+        /// @param exitCode      The exit code of the tool
+        /// @return The metrics of the invocation
+        Invocation finish(String task, String tool, Tool.ExecutionMode executionMode, int exitCode) {
+            var runtime = this.spawned >= 0 ? System.nanoTime() - this.spawned : -1;
+            return new Invocation(
+                task,
+                tool,
+                executionMode,
+                this.start,
+                millis(this.launcherResolution),
+                millis(this.classpathResolution),
+                millis(this.firstOutput.get()),
+                millis(runtime),
+                millis(this.cpuTime.get()),
+                millis(this.permitWait),
+                this.permitMemory,
+                exitCode,
+                this.stdOutBytes.get(),
+                this.stdErrBytes.get()
+            );
+        }
+
+        private long lap() {
+            var now = System.nanoTime();
+            var lap = now - this.phase;
+            this.phase = now;
+            return lap;
+        }
+
+        private static long millis(long nanos) {
+            return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+}
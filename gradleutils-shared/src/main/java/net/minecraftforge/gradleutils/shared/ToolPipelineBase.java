@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Named;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.LogLevel;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Console;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.process.ExecResult;
+import org.gradle.process.ProcessExecutionException;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/// This tool pipeline task runs a chain of [tools][Tool] as a single task, with the output of each stage being the
+/// input of the next. Multi-stage processing, such as deobfuscating, access transforming, and then remapping a jar,
+/// then takes a single worker instead of a task for each step, and does not keep a full intermediate jar for each.
+///
+/// Each stage is given its input and output with its [input][Stage#getInputArgument()] and
+/// [output][Stage#getOutputArgument()] arguments. Consecutive [streaming][Stage#getStreaming()] stages run at the same
+/// time, connected by OS pipes, so the output between them never touches the disk. Any other intermediate output is
+/// written to the [intermediate directory][#getIntermediateDirectory()], and deleted as soon as the next stage has
+/// finished with it. Only the final output and the [checkpoints][Stage#getCheckpoint()] asked for are kept.
+///
+/// @param <P> The type of enhanced problems, used for common problems reporting with illegal task arguments
+public abstract class ToolPipelineBase<P extends EnhancedProblems> extends DefaultTask implements EnhancedTask<P> {
+    /// The argument given in place of a file to a streaming stage, which reads from its standard input or writes to its
+    /// standard output instead.
+    public static final String PIPE = "-";
+
+    private final P problems = this.getObjects().newInstance(this.problemsType());
+    private final List<Stage> stages = new ArrayList<>();
+    private final Property<ToolForkPermits> forkPermits = this.getObjects().property(ToolForkPermits.class);
+
+    /// The input of the first stage.
+    ///
+    /// @return The property for the input file
+    public abstract @InputFile RegularFileProperty getInputFile();
+
+    /// The output of the last stage. Defaults to the [default output file][#getDefaultOutputFile()].
+    ///
+    /// @return The property for the output file
+    public abstract @OutputFile RegularFileProperty getOutputFile();
+
+    /// The directory that intermediate outputs between stages that do not stream are written to. Defaults to the
+    /// task's temporary directory. Pointing it to a memory-backed file system, such as `/dev/shm` on Linux, keeps
+    /// those outputs in memory as well.
+    ///
+    /// @return The property for the intermediate directory
+    public abstract @Internal DirectoryProperty getIntermediateDirectory();
+
+    /// The stages of this pipeline, in the order they run.
+    ///
+    /// @return The stages
+    public @Nested List<Stage> getStages() {
+        return Collections.unmodifiableList(this.stages);
+    }
+
+    protected abstract @Console Property<LogLevel> getStandardOutputLogLevel();
+
+    protected abstract @Console Property<LogLevel> getStandardErrorLogLevel();
+
+    protected abstract @Internal RegularFileProperty getLogFile();
+
+    protected abstract @Inject ObjectFactory getObjects();
+
+    protected abstract @Inject ProviderFactory getProviders();
+
+    protected abstract @Inject ProjectLayout getLayout();
+
+    /// Creates a new task instance using the given types.
+    ///
+    /// @implSpec The implementing subclass <strong>must</strong> make their constructor public, annotated with
+    /// [Inject], and have no parameters, passing in static plugin and problems types to this base constructor. The
+    /// types must also be manually specified in the class declaration when overriding this class.
+    protected ToolPipelineBase() {
+        var plugin = getProject().getPlugins().getPlugin(this.pluginType());
+        var toolsPrefetch = plugin.getToolsPrefetch();
+        if (toolsPrefetch != null)
+            this.dependsOn(toolsPrefetch);
+
+        var toolForkPermits = plugin.getToolForkPermits();
+        this.usesService(toolForkPermits);
+        this.forkPermits.set(toolForkPermits);
+
+        this.getOutputFile().convention(this.getDefaultOutputFile());
+        this.getIntermediateDirectory().convention(this.getLayout().dir(this.getProviders().provider(this::getTemporaryDir)));
+
+        this.getStandardOutputLogLevel().convention(LogLevel.LIFECYCLE);
+        this.getStandardErrorLogLevel().convention(LogLevel.ERROR);
+        this.getLogFile().convention(this.getDefaultLogFile());
+    }
+
+    /// The enhanced problems instance to use for this task.
+    ///
+    /// @return The enhanced problems
+    protected final @Internal P getProblems() {
+        return this.problems;
+    }
+
+    /// Adds a stage that runs the given tool to the end of this pipeline.
+    ///
+    /// @param name   The name of the stage, which must be unique in this pipeline
+    /// @param tool   The tool to run
+    /// @param action The action to configure the stage with
+    /// @return The stage
+    public final Stage stage(String name, Tool tool, Action<? super Stage> action) {
+        for (var stage : this.stages) {
+            if (stage.getName().equals(name))
+                throw new IllegalArgumentException("Tool pipeline " + this.getPath() + " already has a stage named " + name);
+        }
+
+        var resolved = this.getTool(tool);
+        var plugin = getProject().getPlugins().getPlugin(this.pluginType());
+
+        var stage = this.getObjects().newInstance(Stage.class, name);
+        stage.getClasspath().from(resolved.getClasspath());
+        if (resolved.hasMainClass())
+            stage.getMainClass().set(resolved.getMainClass());
+        stage.getJavaLauncher().set(resolved.getJavaLauncher());
+        stage.getExpectedHeapSize().convention(plugin.getToolDefinitionProperty(tool, Tool.Definition::getExpectedHeapSize));
+        action.execute(stage);
+
+        this.stages.add(stage);
+        return stage;
+    }
+
+    /// A single tool run by a [pipeline][ToolPipelineBase].
+    public abstract static class Stage implements Named {
+        private final String name;
+
+        @Inject
+        public Stage(String name) {
+            this.name = name;
+
+            this.getInputArgument().convention("--input");
+            this.getOutputArgument().convention("--output");
+            this.getStreaming().convention(false);
+        }
+
+        @Override
+        public @Internal String getName() {
+            return this.name;
+        }
+
+        public abstract @InputFiles @Classpath ConfigurableFileCollection getClasspath();
+
+        public abstract @Input @Optional Property<String> getMainClass();
+
+        public abstract @Nested Property<JavaLauncher> getJavaLauncher();
+
+        /// The arguments to the tool, which come before its input and output.
+        ///
+        /// @return The list property for the arguments
+        public abstract @Input ListProperty<String> getArgs();
+
+        public abstract @Input ListProperty<String> getJvmArgs();
+
+        /// Other files the tool reads, such as mappings given in its [arguments][#getArgs()].
+        ///
+        /// @return The input files
+        public abstract @InputFiles ConfigurableFileCollection getInputFiles();
+
+        /// The argument that precedes the input of the stage. Defaults to `--input`.
+        ///
+        /// @return The property for the input argument
+        public abstract @Input Property<String> getInputArgument();
+
+        /// The argument that precedes the output of the stage. Defaults to `--output`.
+        ///
+        /// @return The property for the output argument
+        public abstract @Input Property<String> getOutputArgument();
+
+        /// If the tool can read its input from its standard input and write its output to its standard output, when
+        /// given [`-`][#PIPE] in place of either file. Consecutive streaming stages are connected by pipes instead of
+        /// intermediate files. Defaults to `false`.
+        ///
+        /// @return The property for if the stage streams
+        public abstract @Input Property<Boolean> getStreaming();
+
+        /// A file to keep the output of this stage in, for when it is needed on its own, such as for debugging. A
+        /// streaming stage with a checkpoint writes it to the file instead of piping it to the next stage.
+        ///
+        /// @return The property for the checkpoint file
+        public abstract @OutputFile @Optional RegularFileProperty getCheckpoint();
+
+        /// The heap size the tool is expected to use. Defaults to the
+        /// [tool's definition][Tool.Definition#getExpectedHeapSize()].
+        ///
+        /// @return The property for the expected heap size
+        public abstract @Internal @Optional Property<String> getExpectedHeapSize();
+
+        private boolean pipesTo(Stage next) {
+            return this.getStreaming().get() && next.getStreaming().get() && !this.getCheckpoint().isPresent();
+        }
+
+        private List<String> command(String input, String output, File argumentFile) throws IOException {
+            var executable = this.getJavaLauncher().get();
+            var classpath = this.getClasspath().getFiles();
+            var jvmArgs = this.getJvmArgs().get();
+
+            var args = new ArrayList<>(this.getArgs().get());
+            args.add(this.getInputArgument().get());
+            args.add(input);
+            args.add(this.getOutputArgument().get());
+            args.add(output);
+
+            var command = new ArrayList<String>();
+            command.add(executable.getExecutablePath().getAsFile().getAbsolutePath());
+            var classpathString = classpath.stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator));
+            if (ToolArgumentFile.isNeeded(executable.getMetadata().getLanguageVersion().asInt(), ToolArgumentFile.DEFAULT_THRESHOLD, jvmArgs, args, List.of(classpathString))) {
+                ToolArgumentFile.write(argumentFile.toPath(), jvmArgs, Map.of(), classpath, this.getMainClass().getOrNull(), args);
+                command.add('@' + argumentFile.getAbsolutePath());
+                return command;
+            }
+
+            command.addAll(jvmArgs);
+            command.add("-cp");
+            command.add(classpathString);
+            command.add(this.getMainClass().isPresent() ? this.getMainClass().get() : ToolArgumentFile.mainClassOf(classpath.stream().findFirst().orElse(null)));
+            command.addAll(args);
+            return command;
+        }
+    }
+
+    /// Runs the stages of this pipeline. If a stage fails, the stages after it do not run.
+    ///
+    /// @return The result of the last stage that ran
+    @TaskAction
+    protected ExecResult exec() throws IOException {
+        if (this.stages.isEmpty())
+            throw new IllegalStateException("Tool pipeline " + this.getPath() + " has no stages");
+
+        var output = this.getOutputFile().getAsFile().get();
+        var intermediateDirectory = this.getIntermediateDirectory().getAsFile().get();
+        var workingDirectory = this.getTemporaryDir();
+
+        try (var log = new ToolLog(this.getLogFile().getAsFile().get().toPath(), ToolExecBase.LogFormat.TEXT, false, 0)) {
+            var input = this.getInputFile().getAsFile().get();
+            File intermediate = null;
+            StageResult result = null;
+            for (int first = 0; first < this.stages.size(); ) {
+                int last = first;
+                while (last + 1 < this.stages.size() && this.stages.get(last).pipesTo(this.stages.get(last + 1)))
+                    last++;
+
+                var lastStage = this.stages.get(last);
+                File stageOutput;
+                boolean isIntermediate = false;
+                if (last == this.stages.size() - 1) {
+                    stageOutput = output;
+                } else if (lastStage.getCheckpoint().isPresent()) {
+                    stageOutput = lastStage.getCheckpoint().getAsFile().get();
+                } else {
+                    stageOutput = new File(intermediateDirectory, last + "-" + lastStage.getName() + '-' + output.getName());
+                    isIntermediate = true;
+                }
+                Files.createDirectories(stageOutput.toPath().toAbsolutePath().getParent());
+
+                result = this.run(this.stages.subList(first, last + 1), input, stageOutput, workingDirectory, log);
+
+                // the intermediate output is only needed by the stage that read it
+                if (intermediate != null)
+                    Files.deleteIfExists(intermediate.toPath());
+                if (result.getExitValue() != 0) {
+                    if (isIntermediate)
+                        Files.deleteIfExists(stageOutput.toPath());
+                    return result;
+                }
+
+                input = stageOutput;
+                intermediate = isIntermediate ? stageOutput : null;
+                first = last + 1;
+            }
+
+            // the last stage writes the final output, so its checkpoint can only be a copy of it
+            var lastCheckpoint = this.stages.get(this.stages.size() - 1).getCheckpoint();
+            if (lastCheckpoint.isPresent())
+                Files.copy(output.toPath(), lastCheckpoint.getAsFile().get().toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            return result;
+        }
+    }
+
+    /// Runs stages that are connected by pipes at the same time.
+    ///
+    /// @param stages           The stages
+    /// @param input            The input of the first stage
+    /// @param output           The output of the last stage
+    /// @param workingDirectory The working directory of the stages
+    /// @param log              The log of the pipeline
+    /// @return The result of the first stage that failed, or of the last stage
+    @SuppressWarnings("try") // the permit only needs to be held while the stages run
+    private StageResult run(List<Stage> stages, File input, File output, File workingDirectory, ToolLog log) throws IOException {
+        var stdOutLevel = this.getStandardOutputLogLevel().get();
+        var stdErrLevel = this.getStandardErrorLogLevel().get();
+        var logger = getLogger();
+
+        var builders = new ArrayList<ProcessBuilder>(stages.size());
+        long expectedMemory = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            var stage = stages.get(i);
+            var command = stage.command(
+                i == 0 ? input.getAbsolutePath() : PIPE,
+                i == stages.size() - 1 ? output.getAbsolutePath() : PIPE,
+                new File(workingDirectory, stage.getName() + "-args.txt")
+            );
+
+            log.header("Stage: " + stage.getName());
+            log.header("Command: " + String.join(" ", command));
+            builders.add(new ProcessBuilder(command).directory(workingDirectory));
+            expectedMemory += ToolForkPermits.expectedMemory(stage.getJvmArgs().get(), stage.getExpectedHeapSize().getOrNull());
+        }
+        log.header("====================================");
+
+        var name = stages.stream().map(Stage::getName).collect(Collectors.joining(" | "));
+        // stages that are piped together run at once, so they take a single permit for all of them
+        try (var permit = this.forkPermits.get().acquire(this.getPath() + " (" + name + ')', expectedMemory, 0)) {
+            var processes = ProcessBuilder.startPipeline(builders);
+            var readers = new ArrayList<Thread>();
+            try {
+                // the first stage reads from its input file
+                processes.get(0).getOutputStream().close();
+
+                for (int i = 0; i < processes.size(); i++) {
+                    var prefix = stages.size() > 1 ? '[' + stages.get(i).getName() + "] " : "";
+                    readers.add(read(processes.get(i).getErrorStream(), line -> {
+                        logger.log(stdErrLevel, prefix + line);
+                        log.err(prefix + line);
+                    }));
+                }
+                // only the last stage's output is not piped to another stage
+                var lastPrefix = stages.size() > 1 ? '[' + stages.get(stages.size() - 1).getName() + "] " : "";
+                readers.add(read(processes.get(processes.size() - 1).getInputStream(), line -> {
+                    logger.log(stdOutLevel, lastPrefix + line);
+                    log.out(lastPrefix + line);
+                }));
+
+                StageResult failed = null;
+                for (int i = 0; i < processes.size(); i++) {
+                    var exitValue = processes.get(i).waitFor();
+                    if (exitValue != 0 && failed == null)
+                        failed = new StageResult(stages.get(i).getName(), exitValue);
+                }
+                for (var reader : readers) {
+                    reader.join();
+                }
+
+                return failed != null ? failed : new StageResult(stages.get(stages.size() - 1).getName(), 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while running tool pipeline stages " + name);
+            } finally {
+                for (var process : processes) {
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    private static Thread read(InputStream stream, Consumer<String> lines) {
+        var thread = new Thread(() -> {
+            try (var reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
+                for (String line; (line = reader.readLine()) != null; ) {
+                    lines.accept(line);
+                }
+            } catch (IOException ignored) {
+                // the stream is closed once the stage is stopped
+            }
+        }, "Tool Pipeline Output");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /// The result of a stage of a pipeline.
+    ///
+    /// @param stage     The name of the stage
+    /// @param exitValue The exit value of the stage
+    private record StageResult(String stage, int exitValue) implements ExecResult {
+        @Override
+        public int getExitValue() {
+            return this.exitValue;
+        }
+
+        @Override
+        public ExecResult assertNormalExitValue() {
+            if (this.exitValue != 0)
+                throw new ProcessExecutionException("Tool pipeline stage " + this.stage + " finished with non-zero exit value (" + this.exitValue + ")");
+
+            return this;
+        }
+
+        @Override
+        public ExecResult rethrowFailure() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/// Remembers, for the whole build, whether each tool can be resolved through Gradle or must be downloaded directly.
+/// Only the decision and the resolved files are shared between projects, each project resolves its tools through a
+/// detached configuration of its own.
+///
+/// Deciding this requires resolving the tool's detached configuration, including repository metadata lookups, just to
+/// check if it resolves to anything. With this service, that happens once per tool module and set of repositories
+/// instead of once per task. If a cache file is given, the decisions are also persisted across builds, and are reused
+/// for up to [#MAX_AGE] as long as the resolved files still exist, unless dependencies are being refreshed. Decisions
+/// for dynamic or changing versions (such as `1.+` or snapshots) are never persisted, as they may resolve to something
+/// else in the next build. Neither are decisions made because the tool failed to resolve, so that a temporary failure
+/// does not keep the tool from being resolved through Gradle in later builds.
+abstract class ToolResolutions implements BuildService<ToolResolutions.Parameters>, AutoCloseable {
+    private static final Logger LOGGER = Logging.getLogger(ToolResolutions.class);
+
+    private static final int MAGIC = 0x4647_5452; // FGTR
+    private static final int VERSION = 2;
+
+    /// How long a persisted decision is reused for before the tool is resolved through Gradle again.
+    static final Duration MAX_AGE = Duration.ofDays(1);
+
+    interface Parameters extends BuildServiceParameters {
+        /// The file to persist the decisions to across builds. If absent, they are only kept for the current build.
+        ///
+        /// @return The property for the cache file
+        RegularFileProperty getCacheFile();
+
+        /// If dependencies are being refreshed (with `--refresh-dependencies`), in which case persisted decisions are
+        /// not reused.
+        ///
+        /// @return The property for if dependencies are being refreshed
+        Property<Boolean> getRefresh();
+    }
+
+    /// The decision on how to get a tool's classpath.
+    ///
+    /// @param useGradle If the tool was resolved through Gradle
+    /// @param files     The files resolved through Gradle, or an empty list if the tool must be downloaded
+    record Decision(boolean useGradle, List<File> files) {
+        static final Decision DOWNLOAD = new Decision(false, List.of());
+
+        private boolean isValid() {
+            for (var file : this.files) {
+                if (!file.exists()) return false;
+            }
+
+            return true;
+        }
+    }
+
+    /// A persisted decision.
+    ///
+    /// @param decision The decision
+    /// @param time     When the decision was made, in milliseconds since the epoch
+    private record Persisted(Decision decision, long time) {
+        private boolean isExpired(long now) {
+            return now - this.time > MAX_AGE.toMillis() || now < this.time;
+        }
+    }
+
+    private final ConcurrentMap<String, CompletableFuture<Decision>> decisions = new ConcurrentHashMap<>();
+    private final Map<String, Persisted> persisted;
+    /// The decisions made in this build that can be persisted.
+    private final ConcurrentMap<String, Persisted> decided = new ConcurrentHashMap<>();
+
+    @Inject
+    public ToolResolutions() {
+        this.persisted = this.getParameters().getCacheFile().isPresent() && !this.getParameters().getRefresh().getOrElse(false)
+            ? read(this.getParameters().getCacheFile().get().getAsFile().toPath())
+            : Map.of();
+    }
+
+    /// Checks if the given version may resolve to something else over time, such as a dynamic version (`1.+`,
+    /// `[1.0,2.0)`, or `latest.release`) or a snapshot.
+    ///
+    /// @param version The version
+    /// @return If the version is dynamic or changing
+    static boolean isChanging(@Nullable String version) {
+        if (version == null || version.isEmpty()) return true;
+
+        return version.endsWith("+")
+            || version.startsWith("latest.")
+            || version.endsWith("SNAPSHOT")
+            || version.chars().anyMatch(c -> c == '[' || c == ']' || c == '(' || c == ')' || c == ',');
+    }
+
+    /// Gets the decision for the given tool, resolving it with Gradle if it has not yet been decided in this build (or
+    /// a previous one, if persisted).
+    ///
+    /// @param key      The cache key, made of the tool's module and the repositories it is resolved from
+    /// @param changing If the tool's version is [dynamic or changing][#isChanging(String)], in which case the
+    ///                 decision is only kept for this build
+    /// @param resolver Resolves the tool through Gradle
+    /// @return The decision
+    Decision decide(String key, boolean changing, Callable<Set<File>> resolver) {
+        var future = new CompletableFuture<Decision>();
+        var existing = this.decisions.putIfAbsent(key, future);
+        if (existing != null) return existing.join();
+
+        var now = System.currentTimeMillis();
+        var persisted = changing ? null : this.persisted.get(key);
+        if (persisted != null && !persisted.isExpired(now) && persisted.decision().isValid()) {
+            future.complete(persisted.decision());
+            return persisted.decision();
+        }
+
+        var decision = tryDecide(resolver);
+        if (decision == null)
+            decision = Decision.DOWNLOAD; // only for this build, the next one may be able to resolve the tool
+        else if (!changing)
+            this.decided.put(key, new Persisted(decision, now));
+
+        future.complete(decision);
+        return decision;
+    }
+
+    /// Resolves the tool through Gradle to decide how to get its classpath, without caching the decision.
+    ///
+    /// @param resolver Resolves the tool through Gradle
+    /// @return The decision
+    static Decision decide(Callable<Set<File>> resolver) {
+        var decision = tryDecide(resolver);
+        return decision != null ? decision : Decision.DOWNLOAD;
+    }
+
+    private static @Nullable Decision tryDecide(Callable<Set<File>> resolver) {
+        try {
+            var files = resolver.call();
+            return files.isEmpty() ? Decision.DOWNLOAD : new Decision(true, List.copyOf(files));
+        } catch (Exception e) {
+            LOGGER.info("Failed to resolve tool through Gradle, it will be downloaded instead", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.decided.isEmpty() || !this.getParameters().getCacheFile().isPresent()) return;
+
+        var file = this.getParameters().getCacheFile().get().getAsFile().toPath();
+        var decisions = new HashMap<>(this.persisted);
+        decisions.putAll(this.decided);
+        var now = System.currentTimeMillis();
+        decisions.values().removeIf(persisted -> persisted.isExpired(now));
+
+        try {
+            write(file, decisions);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write tool resolution cache {}", file, e);
+        }
+    }
+
+    private static Map<String, Persisted> read(Path file) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return Map.of();
+
+            var size = in.readInt();
+            var decisions = new HashMap<String, Persisted>(size);
+            for (int i = 0; i < size; i++) {
+                var key = in.readUTF();
+                var time = in.readLong();
+                var useGradle = in.readBoolean();
+                var count = in.readInt();
+                var files = new ArrayList<File>(count);
+                for (int j = 0; j < count; j++) {
+                    files.add(new File(in.readUTF()));
+                }
+                decisions.put(key, new Persisted(new Decision(useGradle, List.copyOf(files)), time));
+            }
+            return decisions;
+        } catch (NoSuchFileException e) {
+            return Map.of();
+        } catch (IOException e) {
+            LOGGER.info("Ignoring unreadable tool resolution cache {}", file, e);
+            return Map.of();
+        }
+    }
+
+    private static void write(Path file, Map<String, Persisted> decisions) throws IOException {
+        Files.createDirectories(file.getParent());
+        var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(decisions.size());
+                for (var entry : decisions.entrySet()) {
+                    var decision = entry.getValue().decision();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().time());
+                    out.writeBoolean(decision.useGradle());
+                    out.writeInt(decision.files().size());
+                    for (var f : decision.files()) {
+                        out.writeUTF(f.getAbsolutePath());
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/// A content-addressed store for tools that is shared between all plugins using the same Gradle user home.
+///
+/// Artifacts are stored by their SHA-256 hash in `caches/minecraftforge/.store/sha256`. Aliases for SHA-1 hashes
+/// (from Maven `.sha1` sidecars) and for download URLs are kept as hard links in the `sha1` and `url` directories, so an
+/// artifact can be found without needing to download it first. The tool files used by each plugin are themselves hard
+/// links into this store, meaning that only one copy of each tool exists on disk.
+final class ToolStore {
+    /// The name of the store directory, relative to `caches/minecraftforge`.
+    static final String DIRECTORY = ".store";
+
+    private static final Logger LOGGER = Logging.getLogger(ToolStore.class);
+
+    private final Path root;
+
+    ToolStore(Path root) {
+        this.root = root;
+    }
+
+    /// A checksum as published by a Maven repository.
+    ///
+    /// @param algorithm The name of the hash algorithm (`sha256` or `sha1`)
+    /// @param hash      The hash, in lowercase hexadecimal
+    record Checksum(String algorithm, String hash) { }
+
+    /// Finds an artifact in the store using the given checksum.
+    ///
+    /// @param checksum The checksum of the artifact
+    /// @return The stored artifact, or `null` if it is not in the store
+    @Nullable Path find(Checksum checksum) {
+        return existing(this.path(checksum.algorithm(), checksum.hash()));
+    }
+
+    /// Finds an artifact in the store that was previously downloaded from the given URL.
+    ///
+    /// @param url The download URL
+    /// @return The stored artifact, or `null` if it is not in the store
+    @Nullable Path findByUrl(String url) {
+        return existing(this.path("url", hash(url)));
+    }
+
+    /// Adds the given file to the store, and replaces it with a link into the store.
+    ///
+    /// @param file     The downloaded file
+    /// @param url      The URL the file was downloaded from
+    /// @param checksum The checksum published for the file, which it is verified against
+    /// @return The SHA-256 hash of the file
+    /// @throws IOException If the file could not be hashed or stored, or if it does not match the checksum
+    String put(Path file, String url, @Nullable Checksum checksum) throws IOException {
+        if (checksum != null) {
+            var actual = hash(file, checksum.algorithm());
+            if (!actual.equals(checksum.hash()))
+                throw new IOException("Checksum mismatch for %s: expected %s %s, got %s".formatted(url, checksum.algorithm(), checksum.hash(), actual));
+        }
+
+        var sha256 = hash(file, "sha256");
+        var stored = this.path("sha256", sha256);
+        // Replace the downloaded file with the stored one, in case another process stored it first
+        if (existing(stored) == null || !linkStored(file, stored))
+            link(stored, file);
+
+        // the file is linked to the stored one by now, and unlike it cannot be removed by a cleanup of the store
+        link(this.path("url", hash(url)), file);
+        if (checksum != null && !"sha256".equals(checksum.algorithm()))
+            link(this.path(checksum.algorithm(), checksum.hash()), file);
+
+        return sha256;
+    }
+
+    /// Links the given file to an artifact found in the store. Another build may clean up the store at any time, so
+    /// the artifact may already be gone.
+    ///
+    /// @param file   The file to link
+    /// @param stored The artifact in the store
+    /// @return If the file was linked, or `false` if the artifact is no longer in the store
+    /// @throws IOException If the link could not be created
+    static boolean linkStored(Path file, Path stored) throws IOException {
+        try {
+            link(file, stored);
+            return true;
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("Tool was removed from the store while linking to it: {}", stored);
+            return false;
+        }
+    }
+
+    private Path path(String algorithm, String hash) {
+        return this.root.resolve(algorithm).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static @Nullable Path existing(Path path) {
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /// Atomically creates (or replaces) a hard link to the given file. If hard links are not supported, such as when
+    /// the Gradle user home spans multiple file stores, the file is copied instead.
+    ///
+    /// @param link   The link to create
+    /// @param target The existing file to link to
+    /// @throws IOException If the link could not be created
+    static void link(Path link, Path target) throws IOException {
+        if (Files.exists(link) && Files.isSameFile(link, target)) return;
+
+        Files.createDirectories(link.getParent());
+        var tmp = Files.createTempFile(link.getParent(), link.getFileName().toString(), ".tmp");
+        try {
+            Files.delete(tmp);
+            try {
+                Files.createLink(tmp, target);
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.debug("Failed to hard link {} to {}, copying instead", link, target, e);
+                Files.copy(target, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Files.move(tmp, link, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /// Fetches the checksum of an artifact from the first mirror that publishes a Maven `.sha256` or `.sha1` sidecar.
+    ///
+    /// @param urls The download URLs of the artifact, in order of preference
+    /// @return The checksum, or `null` if no mirror publishes one or it could not be fetched
+    static @Nullable Checksum fetchChecksum(List<String> urls) {
+        for (var url : urls) {
+            var checksum = fetchChecksum(url);
+            if (checksum != null) return checksum;
+        }
+
+        return null;
+    }
+
+    private static @Nullable Checksum fetchChecksum(String url) {
+        for (var algorithm : new String[] { "sha256", "sha1" }) {
+            try {
+                var connection = (HttpURLConnection) URI.create(url + '.' + algorithm).toURL().openConnection();
+                connection.setConnectTimeout(10_000);
+                connection.setReadTimeout(10_000);
+                try (InputStream in = connection.getInputStream()) {
+                    var content = new String(in.readNBytes(1024), StandardCharsets.UTF_8).trim();
+
+                    // Some repositories append the file name after the hash
+                    var hash = content.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+                    if (isHash(hash, algorithm))
+                        return new Checksum(algorithm, hash);
+
+                    LOGGER.debug("Ignoring invalid {} checksum for {}: {}", algorithm, url, hash);
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (FileNotFoundException ignored) {
+                // Sidecar does not exist, try the next one
+            } catch (IOException | IllegalArgumentException | ClassCastException e) {
+                LOGGER.debug("Failed to fetch {} checksum for {}", algorithm, url, e);
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isHash(String hash, String algorithm) {
+        return hash.length() == digest(algorithm).getDigestLength() * 2 && hash.chars().allMatch(HexFormat::isHexDigit);
+    }
+
+    /// Hashes the given file.
+    ///
+    /// @param file      The file to hash
+    /// @param algorithm The name of the hash algorithm (`sha256` or `sha1`)
+    /// @return The hash, in lowercase hexadecimal
+    /// @throws IOException If the file could not be read
+    static String hash(Path file, String algorithm) throws IOException {
+        var digest = digest(algorithm);
+        try (var in = Files.newInputStream(file)) {
+            var buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String hash(String s) {
+        return HexFormat.of().formatHex(digest("sha256").digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance("sha1".equals(algorithm) ? "SHA-1" : "SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Hash algorithm not supported by this JVM: " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/// Watches a [forked][Tool.ExecutionMode#FORK] tool for hanging, so that it does not block a worker until the build
+/// itself times out.
+///
+/// The tool is considered hung once it has run longer than its deadline, or has not written any output for longer
+/// than its inactivity timeout. The watchdog then captures a thread dump of the tool, writes it to the task's log and
+/// to a file of its own, and kills the tool. The tool's process is found among the daemon's child processes by the
+/// [invocation property][ToolMetrics#INVOCATION_PROPERTY], which only works on platforms that expose the arguments of
+/// processes.
+final class ToolWatchdog implements Closeable {
+    private static final Logger LOGGER = Logging.getLogger(ToolWatchdog.class);
+
+    private static final Duration CHECK_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration DUMP_TIMEOUT = Duration.ofSeconds(30);
+    /// The time given to the tool to print its threads after being sent `SIGQUIT`.
+    private static final Duration SIGQUIT_WAIT = Duration.ofSeconds(2);
+
+    private static final ScheduledExecutorService CHECKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "Tool Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String tool;
+    private final String argument;
+    private final long start = System.nanoTime();
+    private final long deadline;
+    private final long inactivityTimeout;
+    private final File javaHome;
+    private final File dumpFile;
+    private final ToolLog log;
+    private final ScheduledFuture<?> checking;
+
+    private volatile long lastOutput = this.start;
+    private volatile @Nullable String reason;
+
+    /// Starts watching a tool.
+    ///
+    /// @param tool              The name of the tool
+    /// @param invocationId      The value of the [invocation property][ToolMetrics#INVOCATION_PROPERTY] given to the
+    ///                          tool
+    /// @param deadline          The longest the tool may run, or `null` for no limit
+    /// @param inactivityTimeout The longest the tool may go without writing any output, or `null` for no limit
+    /// @param javaHome          The Java installation the tool runs with, which is used to capture the thread dump
+    /// @param dumpFile          The file to write the thread dump to
+    /// @param log               The log of the task
+    ToolWatchdog(String tool, String invocationId, @Nullable Duration deadline, @Nullable Duration inactivityTimeout, File javaHome, File dumpFile, ToolLog log) {
+        this.tool = tool;
+        this.argument = "-D" + ToolMetrics.INVOCATION_PROPERTY + '=' + invocationId;
+        this.deadline = deadline != null ? deadline.toNanos() : Long.MAX_VALUE;
+        this.inactivityTimeout = inactivityTimeout != null ? inactivityTimeout.toNanos() : Long.MAX_VALUE;
+        this.javaHome = javaHome;
+        this.dumpFile = dumpFile;
+        this.log = log;
+
+        this.checking = CHECKER.scheduleWithFixedDelay(this::check, CHECK_INTERVAL.toMillis(), CHECK_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /// Checks if the watchdog should be started for the given limits.
+    ///
+    /// @param deadline          The deadline, or `null` for none
+    /// @param inactivityTimeout The inactivity timeout, or `null` for none
+    /// @return If either limit is set
+    static boolean isNeeded(@Nullable Duration deadline, @Nullable Duration inactivityTimeout) {
+        return isSet(deadline) || isSet(inactivityTimeout);
+    }
+
+    private static boolean isSet(@Nullable Duration duration) {
+        return duration != null && !duration.isZero() && !duration.isNegative();
+    }
+
+    /// Wraps the given stream so that anything written to it counts as activity of the tool.
+    ///
+    /// @param output The stream
+    /// @return The wrapped stream
+    OutputStream watch(OutputStream output) {
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(int b) throws IOException {
+                ToolWatchdog.this.lastOutput = System.nanoTime();
+                this.out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ToolWatchdog.this.lastOutput = System.nanoTime();
+                this.out.write(b, off, len);
+            }
+        };
+    }
+
+    /// Gets why the tool was killed.
+    ///
+    /// @return The reason, or `null` if the tool was not killed
+    @Nullable String reason() {
+        return this.reason;
+    }
+
+    /// @return The file the thread dump is written to
+    File dumpFile() {
+        return this.dumpFile;
+    }
+
+    private void check() {
+        var now = System.nanoTime();
+        String reason;
+        if (now - this.start > this.deadline)
+            reason = "it ran for longer than its deadline of " + Duration.ofNanos(this.deadline);
+        else if (now - this.lastOutput > this.inactivityTimeout)
+            reason = "it wrote no output for longer than its inactivity timeout of " + Duration.ofNanos(this.inactivityTimeout);
+        else
+            return;
+
+        var process = ProcessHandle.current().children().filter(this::isTool).findFirst().orElse(null);
+        if (process == null) {
+            // either the tool has just exited, or its arguments cannot be read on this platform
+            LOGGER.debug("Could not find the process of {} to stop it, as {}", this.tool, reason);
+            return;
+        }
+
+        this.reason = reason;
+        this.checking.cancel(false);
+        LOGGER.warn("Stopping {}, as {}", this.tool, reason);
+
+        this.log.header("====================================");
+        this.log.header("Stopping tool, as " + reason);
+        try {
+            this.dumpThreads(process);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to capture a thread dump of {}", this.tool, e);
+            this.log.header("Failed to capture a thread dump: " + e);
+        }
+
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private boolean isTool(ProcessHandle process) {
+        var info = process.info();
+        var arguments = info.arguments().orElse(null);
+        if (arguments != null)
+            return Arrays.asList(arguments).contains(this.argument);
+
+        return info.commandLine().map(commandLine -> commandLine.contains(this.argument)).orElse(false);
+    }
+
+    private void dumpThreads(ProcessHandle process) throws IOException, InterruptedException {
+        var jcmd = new File(this.javaHome, "bin/" + (isWindows() ? "jcmd.exe" : "jcmd"));
+        if (jcmd.isFile()) {
+            var dump = run(List.of(jcmd.getAbsolutePath(), Long.toString(process.pid()), "Thread.print", "-l"));
+            Files.createDirectories(this.dumpFile.toPath().getParent());
+            Files.write(this.dumpFile.toPath(), dump, Charset.defaultCharset());
+
+            this.log.header("Thread dump (also written to " + this.dumpFile.getAbsolutePath() + "):");
+            for (var line : dump) {
+                this.log.header(line);
+            }
+        } else if (!isWindows()) {
+            // without the JDK's tools, the JVM prints its threads to its own output, which is already being logged
+            this.log.header("Thread dump (printed to the tool's output, as " + jcmd + " does not exist):");
+            run(List.of("kill", "-QUIT", Long.toString(process.pid())));
+            Thread.sleep(SIGQUIT_WAIT.toMillis());
+        } else {
+            throw new IOException(jcmd + " does not exist");
+        }
+    }
+
+    private static List<String> run(List<String> command) throws IOException, InterruptedException {
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var lines = new ArrayList<String>();
+        var reader = new Thread(() -> {
+            try (var in = process.inputReader(Charset.defaultCharset())) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    synchronized (lines) {
+                        lines.add(line);
+                    }
+                }
+            } catch (IOException ignored) { }
+        }, "Tool Watchdog Reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        if (!process.waitFor(DUMP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("Timed out running " + String.join(" ", command));
+        }
+        reader.join(DUMP_TIMEOUT.toMillis());
+
+        synchronized (lines) {
+            return new ArrayList<>(lines);
+        }
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).startsWith("windows");
+    }
+
+    @Override
+    public void close() {
+        this.checking.cancel(false);
+    }
+}
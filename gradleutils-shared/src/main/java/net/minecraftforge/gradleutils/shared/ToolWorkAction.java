@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.jar.JarFile;
+
+/// Runs a tool's main method through the Gradle [worker API][org.gradle.workers.WorkerExecutor], for the
+/// [class loader][Tool.ExecutionMode#CLASSLOADER_ISOLATION] and [process][Tool.ExecutionMode#PROCESS_ISOLATION]
+/// isolation execution modes.
+///
+/// The tool's classpath is given as the worker's isolated classpath, so the tool is loaded by the same class loader as
+/// this action. Worker parameters must be serializable, so the tool's output cannot be streamed back to the task.
+/// Instead, it is written line by line to an [output file][Parameters#getOutputFile()], which the task replays once
+/// the work is done. Each line is prefixed with [#STDOUT] or [#STDERR], followed by the CPU time in nanoseconds used by
+/// the thread that ran the tool prefixed with [#CPU_TIME] (if the JVM can measure it), and the last line is the tool's
+/// exit code prefixed with [#EXIT].
+///
+/// Since workers share their JVM with other work, [System#out] and [System#err] are routed per thread (including
+/// threads started by the tool) while the tool runs. The routing is only installed while tools of this class loader are
+/// running, and removed once the last of them has finished, so that it does not keep the class loader reachable.
+abstract class ToolWorkAction implements WorkAction<ToolWorkAction.Parameters> {
+    static final char STDOUT = 'O';
+    static final char STDERR = 'E';
+    static final char CPU_TIME = 'C';
+    static final char EXIT = 'X';
+
+    private static final InheritableThreadLocal<@Nullable PrintStream> OUT = new InheritableThreadLocal<>();
+    private static final InheritableThreadLocal<@Nullable PrintStream> ERR = new InheritableThreadLocal<>();
+    // guarded by System.class, which is shared by the copies of this class in every isolated class loader
+    private static int running;
+    private static @Nullable RoutedPrintStream routedOut;
+    private static @Nullable RoutedPrintStream routedErr;
+
+    interface Parameters extends WorkParameters {
+        /// The main class of the tool. If absent, the `Main-Class` of the first jar on the classpath is used.
+        ///
+        /// @return The property for the main class
+        Property<String> getMainClass();
+
+        /// The first file of the tool's classpath, used to find the main class if it is not given.
+        ///
+        /// @return The property for the first classpath file
+        RegularFileProperty getMainJar();
+
+        /// The arguments to the tool.
+        ///
+        /// @return The property for the arguments
+        ListProperty<String> getArgs();
+
+        /// The system properties to set while the tool runs. These are set for the whole JVM, so they must be empty
+        /// unless the tool runs in a worker daemon of its own.
+        ///
+        /// @return The property for the system properties
+        MapProperty<String, String> getSystemProperties();
+
+        /// The file to write the tool's output and exit code to.
+        ///
+        /// @return The property for the output file
+        RegularFileProperty getOutputFile();
+    }
+
+    @Inject
+    public ToolWorkAction() { }
+
+    @Override
+    public void execute() {
+        var outputFile = this.getParameters().getOutputFile().get().getAsFile();
+        try (var output = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            var threads = ManagementFactory.getThreadMXBean();
+            var cpuStart = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+            int exitCode;
+            try (var out = new PrintStream(new LineOutputStream(output, STDOUT), true);
+                 var err = new PrintStream(new LineOutputStream(output, STDERR), true)) {
+                exitCode = this.run(out, err);
+            }
+
+            synchronized (output) {
+                if (cpuStart >= 0) {
+                    output.write(CPU_TIME);
+                    output.write(Long.toString(threads.getCurrentThreadCpuTime() - cpuStart).getBytes());
+                    output.write('\n');
+                }
+                output.write(EXIT);
+                output.write(Integer.toString(exitCode).getBytes());
+                output.write('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write tool output to " + outputFile, e);
+        }
+    }
+
+    private int run(PrintStream out, PrintStream err) {
+        var parameters = this.getParameters();
+
+        route();
+        OUT.set(out);
+        ERR.set(err);
+
+        var previousProperties = new HashMap<String, String>();
+        for (var property : parameters.getSystemProperties().get().entrySet()) {
+            previousProperties.put(property.getKey(), System.getProperty(property.getKey()));
+            System.setProperty(property.getKey(), property.getValue());
+        }
+
+        var thread = Thread.currentThread();
+        var previousLoader = thread.getContextClassLoader();
+        try {
+            var loader = this.getClass().getClassLoader();
+            thread.setContextClassLoader(loader);
+
+            var mainClass = parameters.getMainClass().isPresent()
+                ? parameters.getMainClass().get()
+                : findMainClass(parameters.getMainJar().get().getAsFile());
+            var main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+            if (!Modifier.isStatic(main.getModifiers()))
+                throw new NoSuchMethodException(mainClass + ".main(String[]) is not static");
+
+            main.setAccessible(true);
+            main.invoke(null, (Object) parameters.getArgs().get().toArray(String[]::new));
+            return 0;
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace(err);
+            return 1;
+        } catch (Exception e) {
+            e.printStackTrace(err);
+            return 1;
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            for (var property : previousProperties.entrySet()) {
+                if (property.getValue() == null)
+                    System.clearProperty(property.getKey());
+                else
+                    System.setProperty(property.getKey(), property.getValue());
+            }
+
+            OUT.remove();
+            ERR.remove();
+            unroute();
+        }
+    }
+
+    private static String findMainClass(File jar) throws IOException {
+        try (var jarFile = new JarFile(jar)) {
+            var manifest = jarFile.getManifest();
+            var mainClass = manifest != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+            if (mainClass == null)
+                throw new IllegalArgumentException("No main class given and " + jar + " has no Main-Class");
+
+            return mainClass;
+        }
+    }
+
+    /// Routes [System#out] and [System#err] to the streams of the tool running on the current thread, if any, until
+    /// [#unroute()] is called as many times as this.
+    ///
+    /// Each isolated class loader has its own copy of this class, so the routing streams are stacked once per tool
+    /// classpath that is running at the same time. Threads without a tool still write to the original streams.
+    private static void route() {
+        synchronized (System.class) {
+            if (running++ > 0) return;
+
+            System.setOut(routedOut = new RoutedPrintStream(System.out, OUT));
+            System.setErr(routedErr = new RoutedPrintStream(System.err, ERR));
+        }
+    }
+
+    /// Removes the routing installed by [#route()] once no tool of this class loader is running anymore.
+    private static void unroute() {
+        synchronized (System.class) {
+            if (--running > 0 || routedOut == null || routedErr == null) return;
+
+            System.setOut(RoutedPrintStream.remove(System.out, routedOut));
+            System.setErr(RoutedPrintStream.remove(System.err, routedErr));
+            routedOut = routedErr = null;
+        }
+    }
+
+    /// Replays the output written by a tool to the given consumers.
+    ///
+    /// @param outputFile The output file of the tool
+    /// @param stdOut     The consumer of the tool's standard output
+    /// @param stdErr     The consumer of the tool's standard error
+    /// @param cpuTime    Given the CPU time in nanoseconds used by the tool, if it was measured
+    /// @return The exit code of the tool
+    /// @throws IOException If the output file could not be read, or the tool did not finish
+    static int replay(File outputFile, Consumer<? super String> stdOut, Consumer<? super String> stdErr, LongConsumer cpuTime) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(outputFile.toPath(), Charset.defaultCharset())) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isEmpty()) continue;
+
+                var content = line.substring(1);
+                switch (line.charAt(0)) {
+                    case STDOUT -> stdOut.accept(content);
+                    case STDERR -> stdErr.accept(content);
+                    case CPU_TIME -> cpuTime.accept(Long.parseLong(content));
+                    case EXIT -> {
+                        return Integer.parseInt(content);
+                    }
+                    default -> throw new IOException("Unknown line in tool output " + outputFile + ": " + line);
+                }
+            }
+        }
+
+        throw new IOException("Tool output " + outputFile + " has no exit code, the worker did not finish");
+    }
+
+    /// A routing stream installed as [System#out] or [System#err].
+    ///
+    /// Routing streams of other class loaders may have been installed on top of this one when it is removed, in which
+    /// case it is only detached: it then writes everything to the stream it replaced, and is skipped once the streams
+    /// on top of it are removed. Those streams are of another copy of this class, so they tell a detached stream by it
+    /// [supplying][Supplier#get()] the stream it replaced.
+    private static final class RoutedPrintStream extends PrintStream implements Supplier<@Nullable PrintStream> {
+        private final RoutedOutputStream routed;
+
+        private RoutedPrintStream(PrintStream fallback, ThreadLocal<@Nullable PrintStream> target) {
+            this(new RoutedOutputStream(skipDetached(fallback), target));
+        }
+
+        private RoutedPrintStream(RoutedOutputStream routed) {
+            super(routed, true);
+            this.routed = routed;
+        }
+
+        /// @return The stream this replaced if it is detached, or `null` if it is routing
+        @Override
+        public @Nullable PrintStream get() {
+            return this.routed.detached ? this.routed.fallback : null;
+        }
+
+        /// Removes the given routing stream.
+        ///
+        /// @param current The current [System#out] or [System#err]
+        /// @param routed  The routing stream to remove
+        /// @return The stream to install instead of the current one
+        private static PrintStream remove(PrintStream current, RoutedPrintStream routed) {
+            routed.routed.detached = true;
+            return skipDetached(current);
+        }
+
+        private static PrintStream skipDetached(PrintStream stream) {
+            while (stream instanceof Supplier<?> supplier && supplier.get() instanceof PrintStream fallback) {
+                stream = fallback;
+            }
+            return stream;
+        }
+    }
+
+    private static final class RoutedOutputStream extends OutputStream {
+        private final PrintStream fallback;
+        private final ThreadLocal<@Nullable PrintStream> target;
+        private volatile boolean detached;
+
+        private RoutedOutputStream(PrintStream fallback, ThreadLocal<@Nullable PrintStream> target) {
+            this.fallback = fallback;
+            this.target = target;
+        }
+
+        private PrintStream target() {
+            var target = this.detached ? null : this.target.get();
+            return target != null ? target : this.fallback;
+        }
+
+        @Override
+        public void write(int b) {
+            this.target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            this.target().flush();
+        }
+    }
+
+    /// Writes complete lines to the output file, each prefixed with the given type.
+    private static final class LineOutputStream extends OutputStream {
+        private final OutputStream output;
+        private final char type;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private LineOutputStream(OutputStream output, char type) {
+            this.output = output;
+            this.type = type;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                this.writeLine();
+            } else if (b != '\r') {
+                this.line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                this.write(b[i]);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (this.line.size() > 0)
+                this.writeLine();
+        }
+
+        private void writeLine() throws IOException {
+            synchronized (this.output) {
+                this.output.write(this.type);
+                this.line.writeTo(this.output);
+                this.output.write('\n');
+            }
+            this.line.reset();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.jar.JarFile;
+
+/// The main class of a warm tool worker JVM, used by [ToolWorkerPool].
+///
+/// The worker reads invocations from its standard input, runs each tool's main method in its own class loader, and
+/// writes the tool's output and exit code back to its standard output as frames tagged with the invocation's ID. It
+/// exits once its standard input is closed. If a tool calls [System#exit(int)], the worker exits with it, and the pool
+/// uses the exit value of the process for every invocation that was still running.
+///
+/// The worker runs up to as many invocations at once as the number of threads given as its only argument (one by
+/// default), so that [batched][Tool.ExecutionMode#BATCHED] tasks can share it. [System#out] and [System#err] are
+/// routed to the invocation running on the current thread, including threads started by the tool. Output written by
+/// threads that do not belong to any invocation is sent with the ID `0`. System properties are global, so a worker that
+/// runs several invocations at once is given them when it starts, and does not set them for each invocation.
+///
+/// This class runs outside of Gradle, so it must only depend on the JDK (and compile-only annotations).
+final class ToolWorker {
+    /// A frame of standard output written by the tool, followed by the invocation ID, its length, and bytes.
+    static final byte FRAME_OUT = 1;
+    /// A frame of standard error written by the tool, followed by the invocation ID, its length, and bytes.
+    static final byte FRAME_ERR = 2;
+    /// The end of an invocation, followed by the invocation ID, the tool's exit code, and the CPU time in nanoseconds
+    /// used by the thread that ran it (or `-1` if the JVM cannot measure it).
+    static final byte FRAME_EXIT = 3;
+
+    /// The start of an invocation sent to the worker.
+    static final byte REQUEST_RUN = 1;
+
+    private static final InheritableThreadLocal<@Nullable PrintStream> OUT = new InheritableThreadLocal<>();
+    private static final InheritableThreadLocal<@Nullable PrintStream> ERR = new InheritableThreadLocal<>();
+
+    private ToolWorker() { }
+
+    /// A single invocation of a tool.
+    ///
+    /// @param id               The ID of the invocation, unique within the worker and never `0`
+    /// @param mainClass        The main class, or an empty string to use the `Main-Class` of the first jar
+    /// @param classpath        The tool's classpath
+    /// @param args             The arguments to the tool
+    /// @param systemProperties The system properties to set while the tool runs
+    record Request(int id, String mainClass, List<String> classpath, List<String> args, Map<String, String> systemProperties) {
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(REQUEST_RUN);
+            out.writeInt(this.id);
+            out.writeUTF(this.mainClass);
+            writeList(out, this.classpath);
+            writeList(out, this.args);
+            out.writeInt(this.systemProperties.size());
+            for (var property : this.systemProperties.entrySet()) {
+                out.writeUTF(property.getKey());
+                out.writeUTF(property.getValue());
+            }
+            out.flush();
+        }
+
+        static Request read(DataInputStream in) throws IOException {
+            var id = in.readInt();
+            var mainClass = in.readUTF();
+            var classpath = readList(in);
+            var args = readList(in);
+            var size = in.readInt();
+            var systemProperties = new HashMap<String, String>(size);
+            for (int i = 0; i < size; i++) {
+                systemProperties.put(in.readUTF(), in.readUTF());
+            }
+            return new Request(id, mainClass, classpath, args, systemProperties);
+        }
+
+        private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+            out.writeInt(list.size());
+            for (var s : list) {
+                out.writeUTF(s);
+            }
+        }
+
+        private static List<String> readList(DataInputStream in) throws IOException {
+            var size = in.readInt();
+            var list = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(in.readUTF());
+            }
+            return list;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        var threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        var in = new DataInputStream(new BufferedInputStream(System.in));
+        var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+        System.setOut(new PrintStream(new RoutedOutputStream(new PrintStream(new FrameOutputStream(out, FRAME_OUT, 0), true), OUT), true));
+        System.setErr(new PrintStream(new RoutedOutputStream(new PrintStream(new FrameOutputStream(out, FRAME_ERR, 0), true), ERR), true));
+
+        // not daemon threads, so that running invocations finish after the input is closed
+        var executor = Executors.newFixedThreadPool(threads, r -> new Thread(r, "Tool Worker Invocation"));
+        try {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    return; // the pool is done with us
+                }
+
+                if (type != REQUEST_RUN)
+                    throw new IOException("Unknown request type: " + type);
+
+                var request = Request.read(in);
+                executor.execute(() -> run(out, request, threads > 1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void run(DataOutputStream out, Request request, boolean concurrent) {
+        var threads = ManagementFactory.getThreadMXBean();
+        var cpuStart = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+        int exitCode;
+        try (var stdOut = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_OUT, request.id())), true);
+             var stdErr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_ERR, request.id())), true)) {
+            OUT.set(stdOut);
+            ERR.set(stdErr);
+            try {
+                exitCode = run(request, stdErr, concurrent);
+            } finally {
+                OUT.remove();
+                ERR.remove();
+            }
+        }
+
+        var cpuTime = cpuStart >= 0 ? threads.getCurrentThreadCpuTime() - cpuStart : -1;
+        try {
+            synchronized (out) {
+                out.writeByte(FRAME_EXIT);
+                out.writeInt(request.id());
+                out.writeInt(exitCode);
+                out.writeLong(cpuTime);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the pool is gone, nobody is left to report to
+            System.exit(1);
+        }
+    }
+
+    private static int run(Request request, PrintStream stdErr, boolean concurrent) {
+        // restoring them would clear them for the other invocations that are still running
+        var previousProperties = new HashMap<String, String>();
+        if (!concurrent) {
+            for (var property : request.systemProperties().entrySet()) {
+                previousProperties.put(property.getKey(), System.getProperty(property.getKey()));
+                System.setProperty(property.getKey(), property.getValue());
+            }
+        }
+
+        var thread = Thread.currentThread();
+        var previousLoader = thread.getContextClassLoader();
+        try (var loader = new URLClassLoader(urls(request.classpath()), ClassLoader.getPlatformClassLoader())) {
+            thread.setContextClassLoader(loader);
+            var main = findMain(loader, request);
+            main.invoke(null, (Object) request.args().toArray(String[]::new));
+            return 0;
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace(stdErr);
+            return 1;
+        } catch (Throwable e) {
+            e.printStackTrace(stdErr);
+            return 1;
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            for (var property : previousProperties.entrySet()) {
+                if (property.getValue() == null)
+                    System.clearProperty(property.getKey());
+                else
+                    System.setProperty(property.getKey(), property.getValue());
+            }
+        }
+    }
+
+    private static Method findMain(ClassLoader loader, Request request) throws IOException, ReflectiveOperationException {
+        var mainClass = request.mainClass();
+        if (mainClass.isEmpty()) {
+            if (request.classpath().isEmpty())
+                throw new IllegalArgumentException("No main class given and the classpath is empty");
+
+            try (var jar = new JarFile(request.classpath().get(0))) {
+                var manifest = jar.getManifest();
+                mainClass = manifest != null ? manifest.getMainAttributes().getValue("Main-Class") : null;
+            }
+            if (mainClass == null)
+                throw new IllegalArgumentException("No main class given and " + request.classpath().get(0) + " has no Main-Class");
+        }
+
+        var main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+        if (!Modifier.isStatic(main.getModifiers()))
+            throw new NoSuchMethodException(mainClass + ".main(String[]) is not static");
+
+        main.setAccessible(true);
+        return main;
+    }
+
+    private static URL[] urls(List<String> classpath) throws IOException {
+        var urls = new URL[classpath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = new File(classpath.get(i)).toURI().toURL();
+        }
+        return urls;
+    }
+
+    /// Writes to the stream of the invocation running on the current thread, or the fallback if there is none.
+    private static final class RoutedOutputStream extends OutputStream {
+        private final PrintStream fallback;
+        private final ThreadLocal<@Nullable PrintStream> target;
+
+        private RoutedOutputStream(PrintStream fallback, ThreadLocal<@Nullable PrintStream> target) {
+            this.fallback = fallback;
+            this.target = target;
+        }
+
+        private PrintStream target() {
+            var target = this.target.get();
+            return target != null ? target : this.fallback;
+        }
+
+        @Override
+        public void write(int b) {
+            this.target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            this.target().flush();
+        }
+    }
+
+    /// Writes everything written to it as frames of the given type and invocation.
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+        private final int id;
+
+        private FrameOutputStream(DataOutputStream out, byte type, int id) {
+            this.out = out;
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+
+            synchronized (this.out) {
+                this.out.writeByte(this.type);
+                this.out.writeInt(this.id);
+                this.out.writeInt(len);
+                this.out.write(b, off, len);
+                this.out.flush();
+            }
+        }
+    }
+}
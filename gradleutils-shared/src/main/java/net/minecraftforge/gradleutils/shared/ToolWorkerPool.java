@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/// A pool of long-lived [tool worker][ToolWorker] JVMs, kept for the lifetime of the Gradle daemon.
+///
+/// Workers are keyed by their Java executable, the tool's classpath, JVM arguments, and (for workers that run several
+/// invocations at once) system properties, so that a worker is only reused for the exact tool it was started for. A
+/// worker is given new invocations as long as it has a free thread, and is recycled after a maximum amount of runs,
+/// when a tool fails, or when it has been idle for too long.
+///
+/// Invocations are tagged with an ID, so that a worker running several of them at once (as it does for
+/// [batched][Tool.ExecutionMode#BATCHED] tasks) still sends each one's output and exit code to the task that ran it.
+final class ToolWorkerPool {
+    private static final Logger LOGGER = Logging.getLogger(ToolWorkerPool.class);
+
+    /// How long a worker may stay idle before it is stopped.
+    private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+    private static final Map<Key, List<Worker>> WORKERS = new HashMap<>();
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "Tool Worker Reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        REAPER.scheduleWithFixedDelay(ToolWorkerPool::reap, 1, 1, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(ToolWorkerPool::stopAll, "Tool Worker Shutdown"));
+    }
+
+    private ToolWorkerPool() { }
+
+    /// The key workers are pooled by.
+    ///
+    /// @param executable       The Java executable the worker runs on
+    /// @param classpath        The classpath of the tool
+    /// @param jvmArgs          The JVM arguments of the worker
+    /// @param systemProperties The system properties of every invocation in the worker, if it runs several at once
+    /// @param threads          The maximum amount of invocations the worker runs at once
+    record Key(String executable, List<String> classpath, List<String> jvmArgs, Map<String, String> systemProperties, int threads) {
+        /// Creates a key for a worker that runs one invocation at a time.
+        ///
+        /// @param executable The Java executable the worker runs on
+        /// @param classpath  The classpath of the tool
+        /// @param jvmArgs    The JVM arguments of the worker
+        Key(String executable, List<String> classpath, List<String> jvmArgs) {
+            this(executable, classpath, jvmArgs, Map.of(), 1);
+        }
+    }
+
+    /// Runs a tool in a pooled worker.
+    ///
+    /// @param key              The worker to use
+    /// @param mainClass        The main class of the tool, or `null` to use the `Main-Class` of the first jar
+    /// @param args             The arguments to the tool
+    /// @param systemProperties The system properties to set while the tool runs
+    /// @param stdOut           The stream to write the tool's standard output to
+    /// @param stdErr           The stream to write the tool's standard error to
+    /// @param maxRuns          The maximum amount of runs before the worker is recycled
+    /// @param cpuTime          Given the CPU time in nanoseconds used by the tool's main thread, if the worker could
+    ///                         measure it
+    /// @return The exit code of the tool
+    /// @throws IOException If the worker could not be started or communicated with
+    static int run(Key key, @Nullable String mainClass, List<String> args, Map<String, String> systemProperties, OutputStream stdOut, OutputStream stdErr, int maxRuns, LongConsumer cpuTime) throws IOException {
+        var worker = acquire(key, maxRuns);
+        boolean reusable = false;
+        try {
+            var exitCode = worker.run(mainClass != null ? mainClass : "", key.classpath(), args, systemProperties, stdOut, stdErr, cpuTime);
+            reusable = exitCode == 0;
+            return exitCode;
+        } finally {
+            release(key, worker, reusable);
+        }
+    }
+
+    private static Worker acquire(Key key, int maxRuns) throws IOException {
+        synchronized (WORKERS) {
+            var workers = WORKERS.get(key);
+            if (workers != null) {
+                for (var worker : workers) {
+                    if (worker.runs >= maxRuns || !worker.process.isAlive())
+                        worker.retired = true;
+
+                    if (!worker.retired && worker.active < key.threads()) {
+                        worker.active++;
+                        worker.runs++;
+                        return worker;
+                    }
+                }
+            }
+        }
+
+        // started outside of the lock, so that other tools do not wait for it
+        var worker = Worker.start(key);
+        synchronized (WORKERS) {
+            worker.active++;
+            worker.runs++;
+            WORKERS.computeIfAbsent(key, k -> new ArrayList<>()).add(worker);
+        }
+        return worker;
+    }
+
+    private static void release(Key key, Worker worker, boolean reusable) {
+        synchronized (WORKERS) {
+            worker.active--;
+            if (!reusable || !worker.process.isAlive())
+                worker.retired = true;
+
+            if (worker.active > 0) return;
+
+            worker.idleSince = System.nanoTime();
+            if (!worker.retired) return;
+
+            var workers = WORKERS.get(key);
+            if (workers != null) {
+                workers.remove(worker);
+                if (workers.isEmpty())
+                    WORKERS.remove(key);
+            }
+        }
+
+        worker.stop();
+    }
+
+    private static void reap() {
+        var stale = new ArrayList<Worker>();
+        synchronized (WORKERS) {
+            var now = System.nanoTime();
+            for (var workers : WORKERS.values()) {
+                workers.removeIf(worker -> {
+                    if (worker.active > 0 || now - worker.idleSince < IDLE_TIMEOUT.toNanos()) return false;
+                    stale.add(worker);
+                    return true;
+                });
+            }
+            WORKERS.values().removeIf(List::isEmpty);
+        }
+
+        for (var worker : stale) {
+            worker.stop();
+        }
+    }
+
+    private static void stopAll() {
+        synchronized (WORKERS) {
+            for (var workers : WORKERS.values()) {
+                for (var worker : workers) {
+                    worker.stop();
+                }
+            }
+            WORKERS.clear();
+        }
+    }
+
+    /// An invocation running in a worker.
+    ///
+    /// @param stdOut   The stream to write the tool's standard output to
+    /// @param stdErr   The stream to write the tool's standard error to
+    /// @param cpuTime  Given the CPU time used by the tool, if known
+    /// @param exitCode Completed with the tool's exit code
+    private record Invocation(OutputStream stdOut, OutputStream stdErr, LongConsumer cpuTime, CompletableFuture<Integer> exitCode) { }
+
+    private static final class Worker {
+        private final Process process;
+        private final DataOutputStream in;
+        private final DataInputStream out;
+        private final Map<Integer, Invocation> invocations = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+        private volatile boolean closed;
+
+        // guarded by WORKERS
+        private int active;
+        private int runs;
+        private boolean retired;
+        private long idleSince;
+
+        private Worker(Process process) {
+            this.process = process;
+            this.in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+
+            var reader = new Thread(this::read, "Tool Worker Reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private static Worker start(Key key) throws IOException {
+            String workerClasspath;
+            try {
+                workerClasspath = new File(ToolWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+            } catch (URISyntaxException | SecurityException | NullPointerException e) {
+                throw new IOException("Failed to locate the tool worker classes", e);
+            }
+
+            var command = new ArrayList<String>();
+            command.add(key.executable());
+            command.addAll(key.jvmArgs());
+            // a worker that runs several invocations at once cannot set them for each one
+            for (var property : key.systemProperties().entrySet()) {
+                command.add("-D" + property.getKey() + '=' + property.getValue());
+            }
+            command.add("-cp");
+            command.add(workerClasspath);
+            command.add(ToolWorker.class.getName());
+            command.add(Integer.toString(key.threads()));
+
+            LOGGER.info("Starting tool worker: {}", command);
+            var process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            return new Worker(process);
+        }
+
+        private int run(String mainClass, List<String> classpath, List<String> args, Map<String, String> systemProperties, OutputStream stdOut, OutputStream stdErr, LongConsumer cpuTime) throws IOException {
+            // IDs only need to be unique among running invocations, and 0 is reserved for output outside of them
+            var id = this.nextId.incrementAndGet() & Integer.MAX_VALUE;
+            if (id == 0) id = this.nextId.incrementAndGet();
+
+            var invocation = new Invocation(stdOut, stdErr, cpuTime, new CompletableFuture<>());
+            this.invocations.put(id, invocation);
+            synchronized (this.in) {
+                new ToolWorker.Request(id, mainClass, classpath, args, systemProperties).write(this.in);
+            }
+
+            // the worker may have exited before it could see the invocation
+            if (this.closed)
+                invocation.exitCode().completeExceptionally(new EOFException("Tool worker has exited"));
+
+            try {
+                return invocation.exitCode().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for tool to finish");
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to communicate with tool worker", e.getCause());
+            } finally {
+                this.invocations.remove(id);
+            }
+        }
+
+        private void read() {
+            var buffer = new byte[8192];
+            try {
+                while (true) {
+                    var type = this.out.readByte();
+                    var invocation = this.invocations.get(this.out.readInt());
+                    switch (type) {
+                        case ToolWorker.FRAME_OUT, ToolWorker.FRAME_ERR -> {
+                            var target = invocation == null ? null : type == ToolWorker.FRAME_OUT ? invocation.stdOut() : invocation.stdErr();
+                            var bytes = target == null ? new ByteArrayOutputStream() : null;
+                            for (int remaining = this.out.readInt(); remaining > 0; ) {
+                                var read = this.out.read(buffer, 0, Math.min(buffer.length, remaining));
+                                if (read < 0) throw new EOFException();
+                                (target != null ? target : bytes).write(buffer, 0, read);
+                                remaining -= read;
+                            }
+
+                            if (bytes != null)
+                                LOGGER.info("Tool worker output: {}", bytes.toString().stripTrailing());
+                        }
+                        case ToolWorker.FRAME_EXIT -> {
+                            var exitCode = this.out.readInt();
+                            var cpuTime = this.out.readLong();
+                            if (invocation != null) {
+                                invocation.stdOut().flush();
+                                invocation.stdErr().flush();
+                                if (cpuTime >= 0)
+                                    invocation.cpuTime().accept(cpuTime);
+                                invocation.exitCode().complete(exitCode);
+                            }
+                        }
+                        default -> throw new IOException("Unknown frame type from tool worker: " + type);
+                    }
+                }
+            } catch (EOFException e) {
+                // a tool exited the worker JVM, so the exit value is that of every invocation still running
+                this.closed = true;
+                try {
+                    var exitValue = this.process.waitFor();
+                    this.invocations.values().forEach(invocation -> invocation.exitCode().complete(exitValue));
+                } catch (InterruptedException ie) {
+                    this.fail(ie);
+                }
+            } catch (IOException e) {
+                this.fail(e);
+            }
+        }
+
+        private void fail(Exception e) {
+            this.closed = true;
+            this.process.destroyForcibly();
+            this.invocations.values().forEach(invocation -> invocation.exitCode().completeExceptionally(e));
+        }
+
+        private void stop() {
+            try {
+                this.in.close();
+            } catch (IOException ignored) { }
+
+            try {
+                if (!this.process.waitFor(5, TimeUnit.SECONDS))
+                    this.process.destroyForcibly();
+            } catch (InterruptedException e) {
+                this.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/// Tasks that export the tools used by a plugin into a single compressed bundle, and import them back into the tool
+/// caches of another machine. This allows air-gapped CI to run builds in offline mode without having to download the
+/// tools itself.
+///
+/// The bundle is a zip file that starts with a manifest listing the SHA-256 hash, cache path, download URL, and module of
+/// every tool, followed by the tools themselves. This allows it to be imported in a single sequential read, verifying each
+/// tool as it is extracted.
+final class ToolsBundle {
+    /// The name of the manifest entry, which is always the first entry in the bundle.
+    private static final String MANIFEST = "tools.list";
+    /// The directory of the tool entries in the bundle.
+    private static final String TOOLS = "tools/";
+
+    private ToolsBundle() { }
+
+    static String nameFor(String prefix, String pluginName) {
+        return prefix + Character.toUpperCase(pluginName.charAt(0)) + pluginName.substring(1) + "Tools";
+    }
+
+    /// A tool in the bundle.
+    ///
+    /// @param sha256 The SHA-256 hash of the tool
+    /// @param path   The path of the tool, relative to the plugin's global caches
+    /// @param url    The URL the tool was downloaded from
+    /// @param module The module of the tool
+    private record Entry(String sha256, String path, String url, String module) {
+        private static Entry parse(String line) throws IOException {
+            var split = line.split("\t");
+            if (split.length != 4)
+                throw new IOException("Malformed tools bundle manifest line: " + line);
+
+            return new Entry(split[0], split[1], split[2], split[3]);
+        }
+
+        @Override
+        public String toString() {
+            return this.sha256 + '\t' + this.path + '\t' + this.url + '\t' + this.module;
+        }
+    }
+
+    /// Exports all tools used by a plugin into a bundle. The tools are prefetched first if needed.
+    abstract static class Export extends DefaultTask {
+        /// The tools to export, mapped by their absolute file paths.
+        ///
+        /// @return The map property for the tools
+        protected abstract @Input MapProperty<String, ToolImpl.Download> getDownloads();
+
+        /// The plugin's global caches directory, which the tool paths in the bundle are relative to.
+        ///
+        /// @return The property for the global caches directory
+        protected abstract @Internal DirectoryProperty getCachesDir();
+
+        /// The bundle to export to.
+        ///
+        /// @return The property for the bundle file
+        public abstract @OutputFile RegularFileProperty getBundle();
+
+        @Inject
+        public Export() {
+            this.setGroup("build setup");
+            this.setDescription("Exports all tools used by the plugin into a bundle, to be imported on machines without network access.");
+        }
+
+        static String nameFor(String pluginName) {
+            return ToolsBundle.nameFor("export", pluginName);
+        }
+
+        @TaskAction
+        protected void exec() throws IOException {
+            var cachesDir = this.getCachesDir().get().getAsFile().toPath();
+            var index = ToolIndex.of(cachesDir);
+            var entries = new ArrayList<Entry>();
+            var files = new ArrayList<Path>();
+            for (var download : this.getDownloads().get().entrySet()) {
+                var file = Path.of(download.getKey());
+                if (!file.startsWith(cachesDir)) {
+                    getLogger().warn("Skipping tool outside of the global caches: {}", file);
+                    continue;
+                }
+
+                var path = cachesDir.relativize(file).toString().replace('\\', '/');
+                var indexed = index.get(file);
+                var sha256 = indexed != null ? indexed.sha256() : ToolStore.hash(file, "sha256");
+                entries.add(new Entry(sha256, path, download.getValue().urls().get(0), download.getValue().module()));
+                files.add(file);
+            }
+
+            var bundle = this.getBundle().get().getAsFile().toPath();
+            Files.createDirectories(bundle.getParent());
+            try (var zip = new ZipOutputStream(Files.newOutputStream(bundle))) {
+                zip.putNextEntry(new ZipEntry(MANIFEST));
+                var writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+                for (var entry : entries) {
+                    writer.write(entry + "\n");
+                }
+                writer.flush();
+                zip.closeEntry();
+
+                for (int i = 0; i < entries.size(); i++) {
+                    zip.putNextEntry(new ZipEntry(TOOLS + entries.get(i).path()));
+                    Files.copy(files.get(i), zip);
+                    zip.closeEntry();
+                }
+            }
+
+            getLogger().lifecycle("Exported {} tools to {}", entries.size(), bundle);
+        }
+    }
+
+    /// Imports a bundle created by [Export] into the global caches and the [tool store][ToolStore]. Every tool is
+    /// verified against the manifest before it is made available.
+    @UntrackedTask(because = "Imports into the global caches, which are not tracked by Gradle.")
+    abstract static class Import extends DefaultTask {
+        /// The plugin's global caches directory, to import the tools into.
+        ///
+        /// @return The property for the global caches directory
+        protected abstract @Internal DirectoryProperty getCachesDir();
+
+        /// The [content-addressed store][ToolStore] to import the tools into.
+        ///
+        /// @return The property for the store directory
+        protected abstract @Internal DirectoryProperty getStoreDir();
+
+        /// The bundle to import.
+        ///
+        /// @return The property for the bundle file
+        public abstract @InputFile @PathSensitive(PathSensitivity.NONE) RegularFileProperty getBundle();
+
+        protected abstract @Inject ObjectFactory getObjects();
+
+        private final EnhancedProblems problems;
+
+        @Inject
+        public Import(String pluginName, String displayName) {
+            this.problems = this.getObjects().newInstance(EnhancedProblems.Minimal.class, pluginName, displayName);
+            this.setGroup("build setup");
+            this.setDescription("Imports a bundle of tools exported from another machine, for use in offline mode.");
+        }
+
+        static String nameFor(String pluginName) {
+            return ToolsBundle.nameFor("import", pluginName);
+        }
+
+        @TaskAction
+        protected void exec() {
+            var bundle = this.getBundle().get().getAsFile();
+            try {
+                var count = this.importBundle(bundle.toPath());
+                getLogger().lifecycle("Imported {} tools from {}", count, bundle);
+            } catch (IOException e) {
+                throw this.problems.invalidToolsBundle(e, bundle);
+            }
+        }
+
+        private int importBundle(Path bundle) throws IOException {
+            var cachesDir = this.getCachesDir().get().getAsFile().toPath().toAbsolutePath().normalize();
+            var index = ToolIndex.of(cachesDir);
+            var store = new ToolStore(this.getStoreDir().get().getAsFile().toPath());
+
+            try (var zip = new ZipInputStream(Files.newInputStream(bundle))) {
+                var manifest = zip.getNextEntry();
+                if (manifest == null || !MANIFEST.equals(manifest.getName()))
+                    throw new IOException("Tools bundle does not start with a manifest");
+
+                var entries = new HashMap<String, Entry>();
+                var reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+                for (String line; (line = reader.readLine()) != null; ) {
+                    if (line.isBlank()) continue;
+
+                    var entry = Entry.parse(line);
+                    entries.put(TOOLS + entry.path(), entry);
+                }
+
+                int count = 0;
+                for (ZipEntry zipEntry; (zipEntry = zip.getNextEntry()) != null; ) {
+                    if (zipEntry.isDirectory()) continue;
+
+                    var entry = entries.remove(zipEntry.getName());
+                    if (entry == null)
+                        throw new IOException("Tools bundle entry is not in the manifest: " + zipEntry.getName());
+
+                    var file = cachesDir.resolve(entry.path()).normalize();
+                    if (!file.startsWith(cachesDir))
+                        throw new IOException("Tools bundle entry is outside of the global caches: " + entry.path());
+
+                    this.importEntry(zip, entry, file, index, store);
+                    count++;
+                }
+
+                if (!entries.isEmpty())
+                    throw new IOException("Tools bundle is missing entries listed in its manifest: " + String.join(", ", entries.keySet()));
+
+                return count;
+            }
+        }
+
+        private void importEntry(ZipInputStream zip, Entry entry, Path file, ToolIndex index, ToolStore store) throws IOException {
+            Files.createDirectories(file.getParent());
+            var partFile = file.resolveSibling(file.getFileName() + ".part");
+            try {
+                var digest = ToolStore.digest("sha256");
+                Files.copy(new DigestInputStream(zip, digest), partFile, StandardCopyOption.REPLACE_EXISTING);
+
+                var actual = HexFormat.of().formatHex(digest.digest());
+                if (!actual.equals(entry.sha256()))
+                    throw new IOException("Checksum mismatch for %s: expected sha256 %s, got %s".formatted(entry.path(), entry.sha256(), actual));
+
+                store.put(partFile, entry.url(), new ToolStore.Checksum("sha256", entry.sha256()));
+                ToolStore.link(file, partFile);
+                // marks the tool as downloaded, so that it is protected from eviction while it is in use
+                ToolsCleanup.createLockFile(file);
+                index.put(file, entry.module(), entry.url(), entry.sha256());
+                getLogger().info("Imported tool: {}", entry.path());
+            } finally {
+                Files.deleteIfExists(partFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.flow.FlowAction;
+import org.gradle.api.flow.FlowParameters;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// Evicts tools from a plugin's global caches that have not been used for a while, or that push the caches over their
+/// size limit, least recently used first.
+///
+/// Last access times are taken from the [tool index][ToolIndex], so the caches never need to be walked. A tool is
+/// never evicted while it is in use: tool execution tasks hold a shared lock on the tool's lock file while the tool
+/// runs, and eviction only deletes a tool if it can take an exclusive lock on it.
+///
+/// The cleanup runs at the end of a build, at most once per [interval][ToolsExtension#getCacheCleanupInterval()]
+/// per plugin, and can also be run on demand with the `cleanup<Plugin>Tools` task.
+final class ToolsCleanup {
+    /// The name of the marker file, relative to the plugin's global caches, whose modification time is the last time
+    /// the cleanup ran.
+    private static final String MARKER = "tools.cleanup";
+
+    private static final Logger LOGGER = Logging.getLogger(ToolsCleanup.class);
+
+    /// The tools in use by this JVM, since file locks cannot be shared between threads of the same JVM.
+    private static final Map<Path, InUse> IN_USE = new ConcurrentHashMap<>();
+
+    private ToolsCleanup() { }
+
+    /// The limits to clean up the caches to.
+    ///
+    /// @param maxSize The maximum total size of the cached tools, in bytes
+    /// @param maxAge  The maximum time since a cached tool was last used
+    record Limits(long maxSize, Duration maxAge) {
+        static final Limits DEFAULT = new Limits(4L * 1024 * 1024 * 1024, Duration.ofDays(30));
+    }
+
+    /// The parameters for the cleanup action.
+    interface Parameters extends FlowParameters {
+        /// The plugin's global caches directory, which holds the [index][ToolIndex] of cached tools.
+        ///
+        /// @return The property for the global caches directory
+        @Input DirectoryProperty getCachesDir();
+
+        /// The [content-addressed store][ToolStore], from which tools no longer used by any plugin are removed.
+        ///
+        /// @return The property for the store directory
+        @Input DirectoryProperty getStoreDir();
+
+        /// The maximum total size of the cached tools, in bytes.
+        ///
+        /// @return The property for the maximum size
+        @Input Property<Long> getMaxSize();
+
+        /// The maximum time since a cached tool was last used.
+        ///
+        /// @return The property for the maximum age
+        @Input Property<Duration> getMaxAge();
+
+        /// The minimum time between two cleanups.
+        ///
+        /// @return The property for the cleanup interval
+        @Input Property<Duration> getInterval();
+    }
+
+    /// Cleans up the caches at the end of the build if the cleanup interval has passed.
+    static abstract class Action implements FlowAction<Parameters> {
+        @Inject
+        public Action() { }
+
+        @Override
+        public void execute(Parameters parameters) {
+            var cachesDir = parameters.getCachesDir().get().getAsFile().toPath();
+            if (!isDue(cachesDir, parameters.getInterval().get())) return;
+
+            try {
+                cleanup(cachesDir, parameters.getStoreDir().get().getAsFile().toPath(), new Limits(parameters.getMaxSize().get(), parameters.getMaxAge().get()));
+            } catch (IOException e) {
+                // not worth failing the build over, it will be tried again next time
+                LOGGER.warn("Failed to clean up tools in {}", cachesDir, e);
+            }
+        }
+    }
+
+    /// Cleans up the caches immediately, regardless of when they were last cleaned up.
+    @UntrackedTask(because = "Cleans up the global caches, which are not tracked by Gradle.")
+    static abstract class Task extends DefaultTask {
+        protected abstract @Internal DirectoryProperty getCachesDir();
+
+        protected abstract @Internal DirectoryProperty getStoreDir();
+
+        protected abstract @Internal Property<Long> getMaxSize();
+
+        protected abstract @Internal Property<Duration> getMaxAge();
+
+        @Inject
+        public Task() {
+            this.setGroup("build setup");
+            this.setDescription("Evicts tools used by the plugin that have not been used for a while, or that exceed the cache size limit.");
+        }
+
+        static String nameFor(String pluginName) {
+            return ToolsBundle.nameFor("cleanup", pluginName);
+        }
+
+        @TaskAction
+        protected void exec() throws IOException {
+            var cachesDir = this.getCachesDir().get().getAsFile().toPath();
+            isDue(cachesDir, Duration.ZERO); // reset the interval
+            cleanup(cachesDir, this.getStoreDir().get().getAsFile().toPath(), new Limits(this.getMaxSize().get(), this.getMaxAge().get()));
+        }
+    }
+
+    /// Checks if the caches are due for a cleanup. If they are, the cleanup is marked as done, so that concurrent
+    /// builds do not run it as well.
+    private static boolean isDue(Path cachesDir, Duration interval) {
+        var marker = cachesDir.resolve(MARKER);
+        var now = System.currentTimeMillis();
+        try {
+            if (Files.exists(marker) && now - Files.getLastModifiedTime(marker).toMillis() < interval.toMillis())
+                return false;
+
+            Files.createDirectories(cachesDir);
+            if (!Files.exists(marker))
+                Files.createFile(marker);
+            Files.setLastModifiedTime(marker, FileTime.fromMillis(now));
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Failed to check cleanup marker {}", marker, e);
+            return false;
+        }
+    }
+
+    /// Evicts tools from the given caches until they are within the given limits, then removes the tools from the
+    /// store that are no longer used by any plugin.
+    ///
+    /// @param cachesDir The plugin's global caches directory
+    /// @param storeDir  The tool store directory
+    /// @param limits    The limits to clean up to
+    /// @throws IOException If the index could not be updated
+    static void cleanup(Path cachesDir, Path storeDir, Limits limits) throws IOException {
+        var index = ToolIndex.of(cachesDir);
+        var entries = new ArrayList<>(index.getAll().entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess()));
+
+        long total = 0;
+        for (var entry : entries) {
+            total += entry.getValue().size();
+        }
+
+        var oldest = System.currentTimeMillis() - limits.maxAge().toMillis();
+        int evicted = 0;
+        long freed = 0;
+        for (var entry : entries) {
+            // entries are sorted by last access, so once neither limit is exceeded, none of the rest will be evicted
+            var expired = entry.getValue().lastAccess() < oldest;
+            if (!expired && total <= limits.maxSize()) break;
+
+            var tool = entry.getKey();
+            if (!evict(index, tool)) continue;
+
+            total -= entry.getValue().size();
+            freed += entry.getValue().size();
+            evicted++;
+        }
+
+        if (evicted > 0)
+            LOGGER.info("Evicted {} tools ({} bytes) from {}", evicted, freed, cachesDir);
+
+        cleanupStore(cachesDir, storeDir);
+    }
+
+    private static boolean evict(ToolIndex index, Path tool) throws IOException {
+        var lockFile = tool.resolveSibling(tool.getFileName() + ".lock");
+        try (var channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             var lock = channel.tryLock()) {
+            if (lock == null) {
+                LOGGER.info("Not evicting tool in use by another process: {}", tool);
+                return false;
+            }
+
+            index.remove(tool);
+            Files.deleteIfExists(tool);
+            Files.deleteIfExists(tool.resolveSibling(tool.getFileName() + ".part"));
+            LOGGER.info("Evicted tool: {}", tool);
+            return true;
+        } catch (OverlappingFileLockException e) {
+            LOGGER.info("Not evicting tool in use by this process: {}", tool);
+            return false;
+        }
+    }
+
+    /// Removes tools from the store that are no longer linked to by any plugin. This relies on hard links, so it is
+    /// skipped if the store is not on the same file store as the caches, in which case tools are copied out of it.
+    private static void cleanupStore(Path cachesDir, Path storeDir) throws IOException {
+        if (!Files.isDirectory(storeDir) || !Files.getFileStore(storeDir).equals(Files.getFileStore(cachesDir))) return;
+        if (!Files.getFileStore(storeDir).supportsFileAttributeView("unix")) return;
+
+        // all links in the store by file, to tell if a file is linked to from outside of it
+        var links = new HashMap<Object, List<Path>>();
+        Files.walkFileTree(storeDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && attrs.fileKey() != null)
+                    links.computeIfAbsent(attrs.fileKey(), k -> new ArrayList<>()).add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        for (var paths : links.values()) {
+            var nlink = (Integer) Files.getAttribute(paths.get(0), "unix:nlink");
+            if (nlink > paths.size()) continue;
+
+            for (var path : paths) {
+                Files.deleteIfExists(path);
+            }
+            LOGGER.info("Removed unused tool from store: {}", paths.get(0).getFileName());
+        }
+    }
+
+    /// Creates the lock file of the given tool, which [#use(Iterable)] and eviction lock, if it does not exist yet.
+    ///
+    /// @param tool The tool file
+    /// @throws IOException If the lock file could not be created
+    static void createLockFile(Path tool) throws IOException {
+        try {
+            Files.createFile(tool.resolveSibling(tool.getFileName() + ".lock"));
+        } catch (FileAlreadyExistsException ignored) { }
+    }
+
+    /// Marks the given tool files as in use until the returned handle is closed, so that they are not evicted while
+    /// a tool runs. Files that were not downloaded as tools, such as those resolved by Gradle, are ignored.
+    ///
+    /// @param files The tool's classpath
+    /// @return The handle to close once the tool has finished
+    static Closeable use(Iterable<File> files) {
+        var used = new ArrayList<Path>();
+        for (var file : files) {
+            var lockFile = new File(file.getParentFile(), file.getName() + ".lock").toPath().toAbsolutePath();
+            if (!Files.exists(lockFile)) continue;
+
+            try {
+                IN_USE.compute(lockFile, (k, inUse) -> {
+                    if (inUse == null) inUse = InUse.acquire(k);
+                    inUse.count++;
+                    return inUse;
+                });
+                used.add(lockFile);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to mark tool as in use: {}", file, e);
+            }
+        }
+
+        return () -> {
+            for (var lockFile : used) {
+                IN_USE.computeIfPresent(lockFile, (k, inUse) -> --inUse.count > 0 ? inUse : inUse.release());
+            }
+        };
+    }
+
+    private static final class InUse {
+        private final FileChannel channel;
+        private int count;
+
+        private InUse(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private static InUse acquire(Path lockFile) {
+            try {
+                var channel = FileChannel.open(lockFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    // a shared lock only blocks eviction, not other users of the tool
+                    if (channel.tryLock(0, Long.MAX_VALUE, true) == null)
+                        LOGGER.debug("Tool is locked by another process: {}", lockFile);
+                    return new InUse(channel);
+                } catch (IOException | OverlappingFileLockException e) {
+                    channel.close();
+                    throw e;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private @Nullable InUse release() {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to release tool lock", e);
+            }
+            return null;
+        }
+    }
+}
@@ -6,8 +6,11 @@ package net.minecraftforge.gradleutils.shared;
 
 import org.gradle.api.Action;
 import org.gradle.api.plugins.ExtensionAware;
+import org.gradle.api.provider.Property;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.time.Duration;
+
 /// This extension can be optionally enabled by implementing plugins to allow buildscript authors to drop-in replace, or
 /// otherwise customize, the tools that are used by this plugin.
 @ApiStatus.Experimental
@@ -17,4 +20,74 @@ public sealed interface ToolsExtension extends ExtensionAware permits ToolsExten
     /// @param name   The name of the tool to configure the definition for
     /// @param action The configuring action
     void configure(String name, Action<? super Tool.Definition> action);
+
+    /// The maximum amount of tools that can be downloaded at the same time when prefetching.
+    ///
+    /// Tools that are used by the plugin are prefetched by the `prefetchTools` lifecycle task, which every tool
+    /// execution task that downloads its tool depends on. This allows all tools to be downloaded concurrently instead
+    /// of one after another. Tools that are resolved through Gradle are left to Gradle, and are not prefetched.
+    ///
+    /// @return The property for the maximum amount of parallel downloads
+    Property<Integer> getMaxParallelDownloads();
+
+    /// The amount of times a failed tool download is retried before failing the build. Each retry goes through all of
+    /// the tool's Maven URLs again, resuming the partially downloaded file if the repository supports it.
+    ///
+    /// @return The property for the download retries
+    Property<Integer> getDownloadRetries();
+
+    /// The time to wait before the first retry of a failed tool download. This is doubled for every following retry.
+    ///
+    /// @return The property for the download retry backoff
+    Property<Duration> getDownloadRetryBackoff();
+
+    /// The maximum amount of connections to download a single large tool over. If greater than `1`, tools of 8 MiB or
+    /// more are split into byte ranges that are downloaded in parallel, as long as the repository supports range
+    /// requests. The assembled tool is verified against its Maven checksum before it is used.
+    ///
+    /// @return The property for the download connections
+    Property<Integer> getDownloadConnections();
+
+    /// The maximum total size, in bytes, of the tools cached by the plugin in the Gradle user home. When exceeded, the
+    /// least recently used tools are evicted until the cache fits again. Tools that are in use are never evicted.
+    ///
+    /// @return The property for the maximum cache size
+    Property<Long> getCacheMaxSize();
+
+    /// The maximum time a cached tool can go unused before it is evicted.
+    ///
+    /// @return The property for the maximum cache age
+    Property<Duration> getCacheMaxAge();
+
+    /// The minimum time between two automatic cleanups of the tool cache, which run at the end of a build. The cleanup
+    /// can also be run on demand using the plugin's `cleanup...Tools` task.
+    ///
+    /// @return The property for the cache cleanup interval
+    Property<Duration> getCacheCleanupInterval();
+
+    /// Whether tools can be resolved through Gradle is only checked once per tool for the whole build. If this is
+    /// enabled, the result is also remembered across builds for up to a day, for as long as the resolved files still
+    /// exist and the project's repositories do not change. Tools with dynamic or changing versions are always resolved
+    /// again, and so are all tools when running with `--refresh-dependencies`.
+    ///
+    /// This applies to the whole build, so it can only be set in the root project.
+    ///
+    /// @return The property for persisting tool resolution
+    Property<Boolean> getPersistentResolution();
+
+    /// Whether metrics of every tool execution are collected, such as the time taken to resolve the tool and to run it,
+    /// the CPU time it used, and the amount of output it wrote. Once the build is done, the metrics are written as JSON
+    /// to `build/reports/tools/<plugin>.json` in the root project.
+    ///
+    /// @return The property for collecting tool metrics
+    Property<Boolean> getCollectMetrics();
+
+    /// The memory, in bytes, that [forked][Tool.ExecutionMode#FORK] tools may use together. Before a tool is forked,
+    /// it waits until its [expected memory][Tool.Definition#getExpectedHeapSize()] fits into what the running forks
+    /// leave free. If empty, it is the physical memory minus the maximum heap of the Gradle daemon.
+    ///
+    /// This applies to the whole build, so it can only be set in the root project.
+    ///
+    /// @return The property for the maximum fork memory
+    Property<Long> getMaxForkMemory();
 }
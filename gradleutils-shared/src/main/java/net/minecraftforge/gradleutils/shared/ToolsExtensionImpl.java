@@ -4,18 +4,41 @@
  */
 package net.minecraftforge.gradleutils.shared;
 
+import org.gradle.StartParameter;
 import org.gradle.api.Action;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.dsl.DependencyFactory;
 import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.jvm.toolchain.JavaToolchainService;
 
 import javax.inject.Inject;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 abstract class ToolsExtensionImpl implements ToolsExtensionInternal {
     final NamedDomainObjectContainer<Tool.Definition> definitions;
+    /// The tools to download when prefetching, mapped by their absolute file paths.
+    final MapProperty<String, ToolImpl.Download> downloads = this.getObjects().mapProperty(String.class, ToolImpl.Download.class);
+    /// The tools resolved for this project, so that its tasks using the same tool with the same definition share one
+    /// detached configuration, value source, and resolved tool.
+    final Map<Object, ToolImpl.ResolvedImpl> resolved = new HashMap<>();
+    /// The build service that remembers how each tool's classpath is resolved.
+    final Property<ToolResolutions> resolutions = this.getObjects().property(ToolResolutions.class);
+    private final Property<Integer> maxParallelDownloads = this.getObjects().property(Integer.class).convention(8);
+    private final Property<Integer> downloadRetries = this.getObjects().property(Integer.class).convention(ToolDownloader.Options.DEFAULT.retries());
+    private final Property<Duration> downloadRetryBackoff = this.getObjects().property(Duration.class).convention(ToolDownloader.Options.DEFAULT.backoff());
+    private final Property<Integer> downloadConnections = this.getObjects().property(Integer.class).convention(ToolDownloader.Options.DEFAULT.connections());
+    private final Property<Long> cacheMaxSize = this.getObjects().property(Long.class).convention(ToolsCleanup.Limits.DEFAULT.maxSize());
+    private final Property<Duration> cacheMaxAge = this.getObjects().property(Duration.class).convention(ToolsCleanup.Limits.DEFAULT.maxAge());
+    private final Property<Duration> cacheCleanupInterval = this.getObjects().property(Duration.class).convention(Duration.ofDays(1));
+    private final Property<Boolean> persistentResolution = this.getObjects().property(Boolean.class).convention(false);
+    private final Property<Boolean> collectMetrics = this.getObjects().property(Boolean.class).convention(false);
+    private final Property<Long> maxForkMemory = this.getObjects().property(Long.class);
 
     protected abstract @Inject Project getProject();
 
@@ -25,13 +48,79 @@ abstract class ToolsExtensionImpl implements ToolsExtensionInternal {
 
     protected abstract @Inject JavaToolchainService getJavaToolchains();
 
+    protected abstract @Inject StartParameter getStartParameter();
+
     @Inject
     public ToolsExtensionImpl() {
         this.definitions = this.getObjects().domainObjectContainer(Tool.Definition.class, name -> getObjects().newInstance(ToolImpl.DefinitionImpl.class, name));
     }
 
+    /// If Gradle is running in offline mode, in which case tools that are not yet cached cannot be downloaded.
+    ///
+    /// @return If Gradle is offline
+    final boolean isOffline() {
+        return this.getStartParameter().isOffline();
+    }
+
+    /// Prevents the properties that apply to the whole build from being changed, as only those of the root project
+    /// are used.
+    final void disallowBuildChanges() {
+        this.persistentResolution.disallowChanges();
+        this.maxForkMemory.disallowChanges();
+    }
+
     @Override
     public void configure(String name, Action<? super Tool.Definition> action) {
         this.definitions.register(name, action);
     }
+
+    @Override
+    public Property<Integer> getMaxParallelDownloads() {
+        return this.maxParallelDownloads;
+    }
+
+    @Override
+    public Property<Integer> getDownloadRetries() {
+        return this.downloadRetries;
+    }
+
+    @Override
+    public Property<Duration> getDownloadRetryBackoff() {
+        return this.downloadRetryBackoff;
+    }
+
+    @Override
+    public Property<Integer> getDownloadConnections() {
+        return this.downloadConnections;
+    }
+
+    @Override
+    public Property<Long> getCacheMaxSize() {
+        return this.cacheMaxSize;
+    }
+
+    @Override
+    public Property<Duration> getCacheMaxAge() {
+        return this.cacheMaxAge;
+    }
+
+    @Override
+    public Property<Duration> getCacheCleanupInterval() {
+        return this.cacheCleanupInterval;
+    }
+
+    @Override
+    public Property<Boolean> getPersistentResolution() {
+        return this.persistentResolution;
+    }
+
+    @Override
+    public Property<Boolean> getCollectMetrics() {
+        return this.collectMetrics;
+    }
+
+    @Override
+    public Property<Long> getMaxForkMemory() {
+        return this.maxForkMemory;
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// Downloads (or verifies) all tools registered to a plugin's [ToolsExtension] concurrently, so that
+/// [tool execution tasks][ToolExecBase] do not need to wait on them one after another. Only tools that are downloaded
+/// directly are registered, as tools resolved through Gradle never use the download.
+@UntrackedTask(because = "Tools are cached in-house, and verifying them is cheap.")
+abstract class ToolsPrefetch extends DefaultTask {
+    /// The name of the lifecycle task that depends on all plugin prefetch tasks.
+    static final String LIFECYCLE_NAME = "prefetchTools";
+
+    /// The tools to download, mapped by their absolute file paths.
+    ///
+    /// @return The map property for the downloads
+    protected abstract @Input MapProperty<String, ToolImpl.Download> getDownloads();
+
+    /// The plugin's global caches directory, which holds the [index][ToolIndex] of cached tools.
+    ///
+    /// @return The property for the global caches directory
+    protected abstract @Internal DirectoryProperty getCachesDir();
+
+    /// The maximum amount of tools to download at the same time.
+    ///
+    /// @return The property for the maximum amount of parallel downloads
+    protected abstract @Internal Property<Integer> getMaxParallelDownloads();
+
+    /// The [content-addressed store][ToolStore] to share the tools with other plugins.
+    ///
+    /// @return The property for the store directory
+    protected abstract @Internal DirectoryProperty getStoreDir();
+
+    /// The amount of times to retry a failed download.
+    ///
+    /// @return The property for the retries
+    protected abstract @Internal Property<Integer> getRetries();
+
+    /// The time to wait before the first retry of a failed download.
+    ///
+    /// @return The property for the retry backoff
+    protected abstract @Internal Property<Duration> getRetryBackoff();
+
+    /// The maximum amount of connections to download a large tool over.
+    ///
+    /// @return The property for the connections
+    protected abstract @Internal Property<Integer> getConnections();
+
+    /// If Gradle is running in offline mode, in which case only cached tools can be used.
+    ///
+    /// @return The property for offline mode
+    protected abstract @Internal Property<Boolean> getOffline();
+
+    protected abstract @Inject ObjectFactory getObjects();
+
+    private final String pluginName;
+    private final EnhancedProblems problems;
+
+    @Inject
+    public ToolsPrefetch(String pluginName, String displayName) {
+        this.pluginName = pluginName;
+        this.problems = this.getObjects().newInstance(EnhancedProblems.Minimal.class, pluginName, displayName);
+        this.setDescription("Downloads all tools used by the plugin ahead of time.");
+    }
+
+    static String nameFor(String pluginName) {
+        return ToolsBundle.nameFor("prefetch", pluginName);
+    }
+
+    @TaskAction
+    protected void exec() throws InterruptedException {
+        var downloads = this.getDownloads().get();
+        if (downloads.isEmpty()) return;
+
+        var threads = Math.max(1, Math.min(downloads.size(), this.getMaxParallelDownloads().get()));
+        getLogger().info("Prefetching {} tools using {} threads", downloads.size(), threads);
+
+        var index = ToolIndex.of(this.getCachesDir().get().getAsFile().toPath());
+        var store = new ToolStore(this.getStoreDir().get().getAsFile().toPath());
+        var options = new ToolDownloader.Options(this.getRetries().get(), this.getRetryBackoff().get(), this.getConnections().get(), this.getOffline().get());
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var futures = new ArrayList<Future<File>>(downloads.size());
+            for (var download : downloads.entrySet()) {
+                futures.add(executor.submit(() -> ToolImpl.Source.download(new File(download.getKey()), download.getValue(), index, store, options)));
+            }
+
+            RuntimeException failure = null;
+            for (var future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // report every tool missing while offline, so that they can all be dealt with at once
+                    var cause = e.getCause();
+                    var offline = findOfflineCause(cause);
+                    if (offline != null)
+                        cause = this.problems.toolUnavailableOffline(offline, offline.getFileName(), offline.getUrls(), ToolsBundle.Import.nameFor(this.pluginName));
+
+                    if (failure == null)
+                        failure = new RuntimeException("Failed to prefetch tools", cause);
+                    else
+                        failure.addSuppressed(cause);
+                }
+            }
+
+            if (failure != null)
+                throw failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ToolDownloader.@Nullable OfflineException findOfflineCause(@Nullable Throwable e) {
+        for (; e != null; e = e.getCause()) {
+            if (e instanceof ToolDownloader.OfflineException offline)
+                return offline;
+        }
+
+        return null;
+    }
+}
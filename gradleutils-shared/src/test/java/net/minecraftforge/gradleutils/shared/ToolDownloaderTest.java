@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) Forge Development LLC and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.gradleutils.shared;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// Tests [ToolDownloader] against a local HTTP server that injects the faults a real mirror can have.
+class ToolDownloaderTest {
+    private static final byte[] CONTENT = new byte[64 * 1024];
+    private static final ToolDownloader.Options OPTIONS = new ToolDownloader.Options(2, Duration.ZERO, 1, false);
+
+    static {
+        new Random(0).nextBytes(CONTENT);
+    }
+
+    /// How the server answers a single request.
+    @FunctionalInterface
+    private interface Fault {
+        void respond(HttpExchange exchange, @Nullable Range range) throws IOException;
+    }
+
+    /// The range asked for by a request.
+    private record Range(long from, long to) {
+        static @Nullable Range of(@Nullable String header) {
+            if (header == null || !header.startsWith("bytes=")) return null;
+
+            var range = header.substring("bytes=".length()).split("-", -1);
+            return new Range(Long.parseLong(range[0]), range[1].isEmpty() ? CONTENT.length - 1 : Long.parseLong(range[1]));
+        }
+    }
+
+    private @TempDir Path dir;
+    private HttpServer server;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentLinkedQueue<Fault> faults = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/missing/", exchange -> {
+            this.requests.add(exchange.getRequestURI().getPath());
+            respond(exchange, 404, new byte[0]);
+        });
+        this.server.createContext("/tool.jar", exchange -> {
+            var header = exchange.getRequestHeaders().getFirst("Range");
+            this.requests.add(header != null ? header : "full");
+
+            Fault fault = this.faults.poll();
+            if (fault == null) fault = ToolDownloaderTest::serve;
+            try {
+                fault.respond(exchange, Range.of(header));
+            } catch (IOException ignored) {
+                // expected when a fault cuts the response short
+            } finally {
+                exchange.close();
+            }
+        });
+        this.server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        this.server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://" + this.server.getAddress().getHostString() + ':' + this.server.getAddress().getPort() + path;
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length > 0 ? body.length : -1);
+        if (body.length > 0) {
+            try (var out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    /// Serves the content like a well-behaved server, honoring the range if there is one.
+    private static void serve(HttpExchange exchange, @Nullable Range range) throws IOException {
+        if (range == null) {
+            respond(exchange, 200, CONTENT);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Range", "bytes %d-%d/%d".formatted(range.from(), range.to(), CONTENT.length));
+        respond(exchange, 206, Arrays.copyOfRange(CONTENT, (int) range.from(), (int) range.to() + 1));
+    }
+
+    private Path download(String... urls) throws IOException {
+        var file = this.dir.resolve("tool.jar");
+        ToolDownloader.download(file, List.of(urls), OPTIONS);
+        return file;
+    }
+
+    @Test
+    void resumesTruncatedDownload() throws IOException {
+        var half = CONTENT.length / 2;
+        this.faults.add((exchange, range) -> {
+            // promise the whole file, but close the connection halfway through
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            var out = exchange.getResponseBody();
+            out.write(CONTENT, 0, half);
+            out.flush();
+            throw new IOException("Truncated");
+        });
+
+        var file = this.download(this.url("/tool.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file));
+        assertEquals(2, this.requests.size());
+        assertEquals("full", this.requests.get(0));
+        // the retry only asks for what is missing, however much of the first half arrived
+        assertTrue(this.requests.get(1).startsWith("bytes="), this.requests.get(1));
+    }
+
+    @Test
+    void retriesServerErrors() throws IOException {
+        this.faults.add((exchange, range) -> respond(exchange, 503, new byte[0]));
+        this.faults.add((exchange, range) -> respond(exchange, 500, new byte[0]));
+
+        var file = this.download(this.url("/tool.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file));
+        assertEquals(List.of("full", "full", "full"), this.requests);
+    }
+
+    @Test
+    void failsAfterRetriesAreExhausted() {
+        for (int i = 0; i <= OPTIONS.retries(); i++)
+            this.faults.add((exchange, range) -> respond(exchange, 503, new byte[0]));
+
+        assertThrows(IOException.class, () -> this.download(this.url("/tool.jar")));
+        assertEquals(OPTIONS.retries() + 1, this.requests.size());
+    }
+
+    @Test
+    void restartsOnWrongContentRange() throws IOException {
+        var file = this.dir.resolve("tool.jar");
+        Files.write(file, Arrays.copyOf(CONTENT, 1000));
+        this.faults.add((exchange, range) -> {
+            // answer a resume with a range that starts somewhere else
+            exchange.getResponseHeaders().set("Content-Range", "bytes 0-%d/%d".formatted(CONTENT.length - 1, CONTENT.length));
+            respond(exchange, 206, CONTENT);
+        });
+
+        this.download(this.url("/tool.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file));
+        assertEquals(List.of("bytes=1000-", "full"), this.requests);
+    }
+
+    @Test
+    void restartsOnUnsatisfiableRange() throws IOException {
+        var file = this.dir.resolve("tool.jar");
+        Files.write(file, new byte[CONTENT.length + 10]);
+        this.faults.add((exchange, range) -> {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + CONTENT.length);
+            respond(exchange, 416, new byte[0]);
+        });
+
+        this.download(this.url("/tool.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file));
+        assertEquals(List.of("bytes=" + (CONTENT.length + 10) + '-', "full"), this.requests);
+    }
+
+    @Test
+    void failsOverToNextMirror() throws IOException {
+        var file = this.download(this.url("/missing/tool.jar"), this.url("/tool.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file));
+        assertEquals(List.of("/missing/tool.jar", "full"), this.requests);
+    }
+
+    @Test
+    void failsOverToNextMirrorOnServerError() throws IOException {
+        var failures = new AtomicInteger();
+        this.server.createContext("/broken/", exchange -> {
+            failures.incrementAndGet();
+            respond(exchange, 502, new byte[0]);
+        });
+
+        var file = this.download(this.url("/broken/tool.jar"), this.url("/tool.jar"));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file));
+        assertEquals(1, failures.get());
+        assertEquals(List.of("full"), this.requests);
+    }
+
+    @Test
+    void doesNotRetryWhenNoMirrorHasTheFile() {
+        assertThrows(FileNotFoundException.class, () -> this.download(this.url("/missing/a.jar"), this.url("/missing/b.jar")));
+        assertEquals(List.of("/missing/a.jar", "/missing/b.jar"), this.requests);
+    }
+}